@@ -2,7 +2,6 @@ package org.plantuml.idea.adapter;
 
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.vfs.VirtualFile;
-import net.sourceforge.plantuml.syntax.SyntaxChecker;
 import net.sourceforge.plantuml.syntax.SyntaxResult;
 import org.apache.commons.lang.StringUtils;
 import org.jetbrains.annotations.Nullable;
@@ -50,13 +49,7 @@ public class Annotator {
 
     private static SyntaxResult checkSyntax(String source, VirtualFile virtualFile) {
         File baseDir = UIUtils.getParent(virtualFile);
-        if (baseDir != null) {
-            Utils.setPlantUmlDir(baseDir);
-
-            Utils.saveAllDocuments(virtualFile==null?null:virtualFile.getPath());
-        } else {
-            Utils.resetPlantUmlDir();
-        }
-        return SyntaxChecker.checkSyntaxFair(source);
+        File file = virtualFile == null ? null : new File(virtualFile.getPath());
+        return RenderContext.run(baseDir, () -> DiagramCache.getSyntaxResult(source, file));
     }
 }
@@ -0,0 +1,271 @@
+package org.plantuml.idea.adapter;
+
+import com.intellij.openapi.diagnostic.Logger;
+import net.sourceforge.plantuml.BlockUml;
+import net.sourceforge.plantuml.ErrorUml;
+import net.sourceforge.plantuml.SourceStringReader;
+import net.sourceforge.plantuml.UmlDiagram;
+import net.sourceforge.plantuml.core.Diagram;
+import net.sourceforge.plantuml.error.PSystemError;
+import net.sourceforge.plantuml.preproc.FileWithSuffix;
+import net.sourceforge.plantuml.syntax.SyntaxChecker;
+import net.sourceforge.plantuml.syntax.SyntaxResult;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.plantuml.idea.adapter.rendering.PlantUmlRendererUtil;
+import org.plantuml.idea.lang.settings.PlantUmlSettings;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.*;
+
+/**
+ * Short-lived cache of parsed diagrams, shared by the syntax check and the rendering of the same source, so that
+ * preprocessing, includes and diagram construction run only once per edit.
+ * <p>
+ * Parsed blocks are handed over only once - the renderer zooms them, which mutates the diagram.
+ * The syntax result does not depend on zoom, so it stays available for the annotator.
+ * <p>
+ * Only used when no PlantUML config is set, otherwise the config lines would be part of the checked source.
+ */
+public class DiagramCache {
+    private static final Logger LOG = Logger.getInstance(DiagramCache.class);
+
+    private static final int MAX_ENTRIES = 10;
+    private static final long MAX_AGE_MILLIS = 30_000;
+
+    private static final Map<Key, Entry> cache = new LinkedHashMap<Key, Entry>(MAX_ENTRIES + 1, 1, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    /**
+     * For the annotator, environment must be prepared.
+     */
+    public static SyntaxResult getSyntaxResult(String source, @Nullable File file) {
+        Key key = Key.create(source, file, true);
+        if (key == null) {
+            return SyntaxChecker.checkSyntaxFair(IncludeResolver.resolve(source, file).getSource());
+        }
+        Entry entry = get(key);
+        if (entry != null) {
+            LOG.debug("reusing syntax result");
+            return entry.syntaxResult;
+        }
+
+        IncludeResolver.Result resolved = IncludeResolver.resolve(source, file);
+        SourceStringReader reader = PlantUmlRendererUtil.newSourceStringReader(resolved, file, true);
+        List<BlockUml> blocks = reader.getBlocks();
+        if (blocks.isEmpty()) {
+            return SyntaxChecker.checkSyntaxFair(resolved.getSource());
+        }
+        entry = new Entry(blocks, resolved.getInlinedFiles(), true);
+        put(key, entry);
+        return entry.syntaxResult;
+    }
+
+    /**
+     * For the renderer, environment must be prepared. Returned blocks are not shared with anybody else.
+     */
+    @NotNull
+    public static Parsed takeBlocks(String source, @Nullable File file, boolean useSettings) {
+        Key key = Key.create(source, file, useSettings);
+        if (key != null) {
+            Entry entry = get(key);
+            if (entry != null) {
+                List<BlockUml> blocks = entry.takeBlocks();
+                if (blocks != null) {
+                    LOG.debug("reusing parsed blocks");
+                    return new Parsed(blocks, entry.inlinedFiles);
+                }
+            }
+        }
+
+        IncludeResolver.Result resolved = IncludeResolver.resolve(source, file);
+        SourceStringReader reader = PlantUmlRendererUtil.newSourceStringReader(resolved, file, useSettings);
+        List<BlockUml> blocks = reader.getBlocks();
+        if (key != null && !blocks.isEmpty()) {
+            put(key, new Entry(blocks, resolved.getInlinedFiles(), false));
+        }
+        return new Parsed(blocks, resolved.getInlinedFiles());
+    }
+
+    @Nullable
+    private static Entry get(Key key) {
+        synchronized (cache) {
+            Entry entry = cache.get(key);
+            if (entry != null && !entry.isValid()) {
+                cache.remove(key);
+                return null;
+            }
+            return entry;
+        }
+    }
+
+    private static void put(Key key, Entry entry) {
+        synchronized (cache) {
+            cache.put(key, entry);
+        }
+    }
+
+    public static void clear() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * @see SyntaxChecker#checkSyntaxFair(String)
+     */
+    @NotNull
+    private static SyntaxResult toSyntaxResult(BlockUml blockUml) {
+        SyntaxResult result = new SyntaxResult();
+        Diagram system = blockUml.getDiagram();
+        result.setCmapData(system.hasUrl());
+        if (system instanceof UmlDiagram) {
+            result.setUmlDiagramType(((UmlDiagram) system).getUmlDiagramType());
+            result.setDescription(system.getDescription().getDescription());
+        } else if (system instanceof PSystemError) {
+            result.setError(true);
+            PSystemError sys = (PSystemError) system;
+            result.setLineLocation(sys.getLineLocation());
+            result.setSystemError(sys);
+            for (ErrorUml er : sys.getErrorsUml()) {
+                result.addErrorText(er.getError());
+            }
+        } else {
+            result.setDescription(system.getDescription().getDescription());
+        }
+        return result;
+    }
+
+    public static class Parsed {
+        private final List<BlockUml> blocks;
+        private final Set<File> inlinedFiles;
+
+        public Parsed(List<BlockUml> blocks, Set<File> inlinedFiles) {
+            this.blocks = blocks;
+            this.inlinedFiles = inlinedFiles;
+        }
+
+        public List<BlockUml> getBlocks() {
+            return blocks;
+        }
+
+        /**
+         * @see IncludeResolver.Result#getInlinedFiles()
+         */
+        public Set<File> getInlinedFiles() {
+            return inlinedFiles;
+        }
+    }
+
+    private static class Entry {
+        private final long created = System.currentTimeMillis();
+        private final SyntaxResult syntaxResult;
+        private final Set<File> inlinedFiles;
+        private final Map<File, Long> includedFiles = new HashMap<>();
+        private final Map<File, Long> documentStamps = new HashMap<>();
+        @Nullable
+        private List<BlockUml> blocks;
+
+        /**
+         * must be created before the blocks are zoomed
+         */
+        Entry(@NotNull List<BlockUml> blocks, Set<File> inlinedFiles, boolean shareBlocks) {
+            this.blocks = shareBlocks ? blocks : null;
+            this.inlinedFiles = inlinedFiles;
+            this.syntaxResult = toSyntaxResult(blocks.get(0));
+            for (BlockUml block : blocks) {
+                try {
+                    for (File file : FileWithSuffix.convert(block.getIncluded())) {
+                        includedFiles.put(file, file.lastModified());
+                    }
+                } catch (FileNotFoundException e) {
+                    LOG.debug(e);
+                }
+            }
+            for (File file : inlinedFiles) {
+                includedFiles.put(file, file.lastModified());
+            }
+            //documents are not saved before parsing anymore
+            for (File file : includedFiles.keySet()) {
+                documentStamps.put(file, org.plantuml.idea.util.Utils.documentModificationStamp(file));
+            }
+        }
+
+        @Nullable
+        synchronized List<BlockUml> takeBlocks() {
+            List<BlockUml> blocks = this.blocks;
+            this.blocks = null;
+            return blocks;
+        }
+
+        boolean isValid() {
+            if (System.currentTimeMillis() - created > MAX_AGE_MILLIS) {
+                return false;
+            }
+            for (Map.Entry<File, Long> entry : includedFiles.entrySet()) {
+                if (entry.getKey().lastModified() != entry.getValue()) {
+                    return false;
+                }
+            }
+            for (Map.Entry<File, Long> entry : documentStamps.entrySet()) {
+                if (org.plantuml.idea.util.Utils.documentModificationStamp(entry.getKey()) != entry.getValue()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static class Key {
+        private final String source;
+        private final String filePath;
+        private final String encoding;
+        private final String includedPaths;
+
+        private Key(String source, String filePath, String encoding, String includedPaths) {
+            this.source = source;
+            this.filePath = filePath;
+            this.encoding = encoding;
+            this.includedPaths = includedPaths;
+        }
+
+        @Nullable
+        static Key create(String source, @Nullable File file, boolean useSettings) {
+            if (IncludeResolver.isFromDisk()) {
+                //entries of this process may have its unsaved documents inlined
+                return null;
+            }
+            String filePath = file == null ? "" : file.getAbsolutePath();
+            PlantUmlSettings settings = PlantUmlSettings.getInstance();
+            String includedPaths = String.valueOf(settings.getIncludedPaths());
+            if (!useSettings) {
+                return new Key(source, filePath, "UTF-8", includedPaths);
+            }
+            if (!settings.getConfigAsList().isEmpty()) {
+                return null;
+            }
+            return new Key(source, filePath, String.valueOf(settings.getEncoding()), includedPaths);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return source.equals(key.source)
+                    && filePath.equals(key.filePath)
+                    && encoding.equals(key.encoding)
+                    && includedPaths.equals(key.includedPaths);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(source, filePath, encoding, includedPaths);
+        }
+    }
+}
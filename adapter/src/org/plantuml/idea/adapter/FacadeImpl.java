@@ -8,11 +8,16 @@ import net.sourceforge.plantuml.png.MetadataTag;
 import org.jetbrains.annotations.Nullable;
 import org.plantuml.idea.adapter.rendering.PlantUmlExporter;
 import org.plantuml.idea.adapter.rendering.PlantUmlRendererUtil;
+import org.plantuml.idea.adapter.rendering.SharedRenderServerHost;
 import org.plantuml.idea.external.PlantUmlFacade;
 import org.plantuml.idea.external.RemoteRenderer;
+import org.plantuml.idea.external.RemoteServers;
+import org.plantuml.idea.external.SharedRenderServer;
+import org.plantuml.idea.lang.annotator.LanguageDescriptor;
 import org.plantuml.idea.lang.annotator.SourceAnnotation;
 import org.plantuml.idea.lang.settings.PlantUmlSettings;
 import org.plantuml.idea.plantuml.ImageFormat;
+import org.plantuml.idea.rendering.ExportResult;
 import org.plantuml.idea.rendering.RenderCacheItem;
 import org.plantuml.idea.rendering.RenderRequest;
 import org.plantuml.idea.rendering.RenderResult;
@@ -63,21 +68,45 @@ public class FacadeImpl implements PlantUmlFacade {
     }
 
     @Override
-    public void renderAndSave(String source, File sourceFile, ImageFormat format, String path, String pathPrefix, Zoom scaledZoom, int pageNumber) throws IOException {
+    public ExportResult renderAndSave(String source, File sourceFile, ImageFormat format, String path, String pathPrefix, Zoom scaledZoom, int pageNumber) throws IOException {
         if (PlantUmlSettings.getInstance().isRemoteRendering()) {
             throw new RuntimeException("Report this and disable Remote Rendering");
         }
         RenderRequest renderRequest = new RenderRequest(sourceFile.getAbsolutePath(), source, format, pageNumber, scaledZoom, -1, false, null);
-        PlantUmlRendererUtil.renderAndSave(renderRequest, path, pathPrefix);
+        return PlantUmlRendererUtil.renderAndSave(renderRequest, path, pathPrefix);
     }
 
     @Override
-    public RenderResult render(RenderRequest renderRequest, RenderCacheItem cachedItem) {
+    public ExportResult renderAndSave(String source, File sourceFile, Collection<ImageFormat> formats, String pathPrefix, Zoom scaledZoom, int pageNumber) throws IOException {
         if (PlantUmlSettings.getInstance().isRemoteRendering()) {
-            return RemoteRenderer.render(renderRequest);
-        } else {
-            return PlantUmlRendererUtil.render(renderRequest, cachedItem);
-        } 
+            throw new RuntimeException("Report this and disable Remote Rendering");
+        }
+        if (formats.isEmpty()) {
+            throw new IllegalArgumentException("no formats");
+        }
+        RenderRequest renderRequest = new RenderRequest(sourceFile.getAbsolutePath(), source, formats.iterator().next(), pageNumber, scaledZoom, -1, false, null);
+        return PlantUmlRendererUtil.renderAndSave(renderRequest, formats, pathPrefix);
+    }
+
+    @Override
+    public RenderResult render(RenderRequest renderRequest, RenderCacheItem cachedItem) {
+        PlantUmlSettings settings = PlantUmlSettings.getInstance();
+        if (settings.isRemoteRendering()) {
+            return RemoteRenderer.render(renderRequest, cachedItem);
+        }
+        //partial rendering renders each page by itself, PNG links are read from an SVG render, they stay local
+        if (settings.isSharedRenderServer() && !renderRequest.getSource().contains(LanguageDescriptor.IDEA_PARTIAL_RENDER)
+                && !(renderRequest.getFormat() == ImageFormat.PNG && renderRequest.isRenderUrlLinks())) {
+            RemoteServers sharedServer = SharedRenderServer.findRunning();
+            if (sharedServer != null) {
+                IncludeResolver.Result resolved = IncludeResolver.resolve(renderRequest.getSource(), renderRequest.getSourceFile());
+                return RemoteRenderer.renderShared(renderRequest, cachedItem, sharedServer, resolved.getSource(), resolved.getInlinedFiles());
+            }
+            if (SharedRenderServer.mayHost()) {
+                SharedRenderServerHost.ensureStarted();
+            }
+        }
+        return PlantUmlRendererUtil.render(renderRequest, cachedItem);
     }
 
     @Override
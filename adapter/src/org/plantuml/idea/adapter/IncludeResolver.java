@@ -0,0 +1,322 @@
+package org.plantuml.idea.adapter;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.vfs.VirtualFile;
+import org.apache.commons.lang.StringUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * PlantUML reads included files from disk. Instead of saving all documents before each render and syntax check,
+ * includes of files with unsaved changes are inlined from their documents.
+ * <p>
+ * Nested includes of an inlined file are resolved relative to that file, the same as PlantUML does. A saved include
+ * is read from disk and inlined too when it includes an unsaved file, otherwise PlantUML would read the stale copy.
+ * If an unsaved include can not be inlined, documents are saved as before.
+ * <p>
+ * Renders for another process, see {@link #fromDisk}, read all includes from disk - that process inlined its unsaved
+ * documents already, the documents of this process are not related.
+ */
+public class IncludeResolver {
+    private static final Logger LOG = Logger.getInstance(IncludeResolver.class);
+
+    private static final Pattern INCLUDE_PATTERN = Pattern.compile("^([ \\t]*)!(include|include_many|include_once|includesub)[ \\t]+(.+?)[ \\t]*$", Pattern.MULTILINE);
+    private static final int MAX_DEPTH = 20;
+    private static final ThreadLocal<Boolean> FROM_DISK = ThreadLocal.withInitial(() -> false);
+
+    public static <T> T fromDisk(Supplier<T> action) {
+        FROM_DISK.set(true);
+        try {
+            return action.get();
+        } finally {
+            FROM_DISK.remove();
+        }
+    }
+
+    public static boolean isFromDisk() {
+        return FROM_DISK.get();
+    }
+
+    @NotNull
+    public static Result resolve(String source, @Nullable File sourceFile) {
+        if (!source.contains("!include") || isFromDisk() || ApplicationManager.getApplication() == null) {
+            return new Result(source, Collections.emptySet());
+        }
+        Map<File, Document> unsavedDocuments = getUnsavedDocuments();
+        if (unsavedDocuments.isEmpty()) {
+            return new Result(source, Collections.emptySet());
+        }
+        long start = System.currentTimeMillis();
+        File baseDir = sourceFile == null ? null : sourceFile.getAbsoluteFile().getParentFile();
+        Result result = resolve(source, baseDir, file -> {
+            Document document = unsavedDocuments.get(file);
+            return document == null ? null : document.getImmutableCharSequence();
+        }, org.plantuml.idea.util.Utils.includedFileCharset());
+        if (result == null) {
+            LOG.debug("unsaved include can not be inlined, saving documents");
+            Utils.saveAllDocuments(sourceFile == null ? null : sourceFile.getPath());
+            return new Result(source, Collections.emptySet());
+        }
+        LOG.debug("includes resolved in ", System.currentTimeMillis() - start, "ms, inlined=", result.inlinedFiles);
+        return result;
+    }
+
+    /**
+     * @param unsavedContent content of a normalized file, null when the file on disk is up to date
+     * @param charset        of saved files, the same PlantUML reads them with
+     * @return null when an unsaved include can not be inlined
+     */
+    @Nullable
+    static Result resolve(String source, @Nullable File baseDir, Function<File, CharSequence> unsavedContent, Charset charset) {
+        Resolver resolver = new Resolver(unsavedContent, charset);
+        String resolved = resolver.inline(source, baseDir, 0);
+        if (resolved == null) {
+            return null;
+        }
+        return new Result(resolved, resolver.inlinedFiles);
+    }
+
+    private static Map<File, Document> getUnsavedDocuments() {
+        FileDocumentManager documentManager = FileDocumentManager.getInstance();
+        Map<File, Document> result = new HashMap<>();
+        for (Document document : documentManager.getUnsavedDocuments()) {
+            VirtualFile file = documentManager.getFile(document);
+            if (file != null && file.isInLocalFileSystem()) {
+                result.put(normalize(new File(file.getPath())), document);
+            }
+        }
+        return result;
+    }
+
+    static File normalize(File file) {
+        return file.getAbsoluteFile().toPath().normalize().toFile();
+    }
+
+    public static class Result {
+        private final String source;
+        private final Set<File> inlinedFiles;
+
+        Result(String source, Set<File> inlinedFiles) {
+            this.source = source;
+            this.inlinedFiles = inlinedFiles;
+        }
+
+        public String getSource() {
+            return source;
+        }
+
+        /**
+         * Files included from their unsaved documents, PlantUML does not know about them.
+         */
+        public Set<File> getInlinedFiles() {
+            return inlinedFiles;
+        }
+    }
+
+    private static class Resolver {
+        private final Function<File, CharSequence> unsavedContent;
+        private final Charset charset;
+        private final Set<File> inlinedFiles = new LinkedHashSet<>();
+        private final Set<String> includedOnce = new HashSet<>();
+        private final Set<File> including = new HashSet<>();
+        private int inlinedCount;
+        private boolean failed;
+
+        Resolver(Function<File, CharSequence> unsavedContent, Charset charset) {
+            this.unsavedContent = unsavedContent;
+            this.charset = charset;
+        }
+
+        @Nullable
+        String inline(String text, @Nullable File baseDir, int depth) {
+            if (!text.contains("!include")) {
+                return text;
+            }
+            if (depth > MAX_DEPTH) {
+                return null;
+            }
+            Matcher matcher = INCLUDE_PATTERN.matcher(text);
+            StringBuilder sb = new StringBuilder();
+            int last = 0;
+            while (matcher.find()) {
+                String replacement = replacement(matcher, baseDir, depth);
+                if (replacement == null) {
+                    return null;
+                }
+                sb.append(text, last, matcher.start()).append(replacement);
+                last = matcher.end();
+            }
+            sb.append(text, last, text.length());
+            return sb.toString();
+        }
+
+        @Nullable
+        private String replacement(Matcher matcher, @Nullable File baseDir, int depth) {
+            String indent = matcher.group(1);
+            String directive = matcher.group(2);
+            String argument = matcher.group(3);
+            boolean quoted = argument.length() > 1 && argument.startsWith("\"") && argument.endsWith("\"");
+            if (quoted) {
+                argument = argument.substring(1, argument.length() - 1);
+            }
+            if (argument.startsWith("<") || argument.contains("://")) {
+                return matcher.group();
+            }
+            String path = StringUtils.substringBefore(argument, "!");
+            String suffix = argument.contains("!") ? StringUtils.substringAfter(argument, "!") : null;
+            File file = org.plantuml.idea.util.Utils.resolveIncludedFile(baseDir, path);
+            if (file == null) {
+                return matcher.group();
+            }
+            file = normalize(file);
+
+            String key = file.getPath() + "!" + suffix;
+            boolean once = !"include_many".equals(directive) && !"includesub".equals(directive);
+            if (once && includedOnce.contains(key)) {
+                return "";
+            }
+
+            CharSequence content = unsavedContent.apply(file);
+            String inlined;
+            if (content != null) {
+                String part = "includesub".equals(directive) ? subPart(content, suffix) : block(content, suffix);
+                if (part == null) {
+                    return null;
+                }
+                if (once) {
+                    includedOnce.add(key);
+                }
+                inlinedCount++;
+                including.add(file);
+                inlined = inline(part, file.getParentFile(), depth + 1);
+                including.remove(file);
+            } else {
+                inlined = inlineSaved(file, directive, suffix, depth);
+                if (failed) {
+                    return null;
+                }
+                if (inlined == null) {
+                    if (depth > 0 && !new File(path).isAbsolute()) {
+                        //the text is inlined elsewhere, PlantUML would resolve it relative to the wrong file
+                        String resolved = file.getPath() + (suffix == null ? "" : "!" + suffix);
+                        return indent + "!" + directive + " " + (quoted ? "\"" + resolved + "\"" : resolved);
+                    }
+                    return matcher.group();
+                }
+                if (once) {
+                    includedOnce.add(key);
+                }
+            }
+            inlinedFiles.add(file);
+            return inlined;
+        }
+
+        /**
+         * @return the saved file inlined from disk when it includes an unsaved file, null when PlantUML can read it,
+         * sets {@link #failed} when an unsaved include below it can not be inlined
+         */
+        @Nullable
+        private String inlineSaved(File file, String directive, @Nullable String suffix, int depth) {
+            if (including.contains(file) || depth >= MAX_DEPTH) {
+                return null;
+            }
+            String content;
+            try {
+                content = new String(Files.readAllBytes(file.toPath()), charset);
+            } catch (IOException e) {
+                LOG.debug("unable to read ", file, e);
+                return null;
+            }
+            if (!content.contains("!include")) {
+                return null;
+            }
+            String part = "includesub".equals(directive) ? subPart(content, suffix) : block(content, suffix);
+            if (part == null) {
+                return null;
+            }
+            int inlinedBefore = inlinedCount;
+            including.add(file);
+            String inlined = inline(part, file.getParentFile(), depth + 1);
+            including.remove(file);
+            if (inlined == null) {
+                failed = true;
+                return null;
+            }
+            if (inlinedCount == inlinedBefore) {
+                return null;
+            }
+            return inlined;
+        }
+    }
+
+    /**
+     * Lines of the {@code @start...@end...} block selected by the suffix - index or id, the first block if null.
+     * The whole text if it has no blocks.
+     */
+    @Nullable
+    static String block(CharSequence content, @Nullable String suffix) {
+        String[] lines = StringUtils.splitPreserveAllTokens(content.toString(), "\n");
+        List<List<String>> blocks = new ArrayList<>();
+        List<String> ids = new ArrayList<>();
+        List<String> current = null;
+        for (String line : lines) {
+            String trimmed = line.trim();
+            if (current == null && trimmed.startsWith("@start")) {
+                current = new ArrayList<>();
+                ids.add(StringUtils.substringBetween(trimmed, "id=", ")"));
+            } else if (current != null && trimmed.startsWith("@end")) {
+                blocks.add(current);
+                current = null;
+            } else if (current != null) {
+                current.add(line);
+            }
+        }
+        if (blocks.isEmpty()) {
+            return suffix == null ? content.toString() : null;
+        }
+        int index = 0;
+        if (suffix != null) {
+            index = StringUtils.isNumeric(suffix) ? Integer.parseInt(suffix) : ids.indexOf(suffix);
+        }
+        if (index < 0 || index >= blocks.size()) {
+            return null;
+        }
+        return StringUtils.join(blocks.get(index), "\n");
+    }
+
+    /**
+     * Lines between {@code !startsub name} and {@code !endsub}.
+     */
+    @Nullable
+    static String subPart(CharSequence content, @Nullable String name) {
+        if (name == null) {
+            return null;
+        }
+        List<String> result = new ArrayList<>();
+        boolean inside = false;
+        for (String line : StringUtils.splitPreserveAllTokens(content.toString(), "\n")) {
+            String trimmed = line.trim();
+            if (trimmed.equals("!startsub " + name)) {
+                inside = true;
+            } else if (inside && trimmed.equals("!endsub")) {
+                inside = false;
+            } else if (inside) {
+                result.add(line);
+            }
+        }
+        return StringUtils.join(result, "\n");
+    }
+}
@@ -0,0 +1,173 @@
+package org.plantuml.idea.adapter;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.ThrowableComputable;
+import net.sourceforge.plantuml.FileSystem;
+import net.sourceforge.plantuml.cucadiagram.dot.GraphvizUtils;
+import net.sourceforge.plantuml.security.SFile;
+import org.apache.commons.lang.StringUtils;
+import org.jetbrains.annotations.Nullable;
+import org.plantuml.idea.lang.settings.PlantUmlSettings;
+import org.plantuml.idea.rendering.RenderingCancelledException;
+
+import java.io.File;
+import java.util.Objects;
+
+/**
+ * PlantUML environment of a single render or syntax check.
+ * <p>
+ * The base dir is the current dir of PlantUML {@link FileSystem}, which is kept per thread, so it is set for the
+ * calling thread only and reset afterwards. Include path, dot executable and size limit are global - system
+ * properties and {@link GraphvizUtils} - so they are applied only while no request with different options runs.
+ * The include path starts with the base dir, nested includes are resolved against the dir of the rendered file,
+ * so requests for files of the same dir run concurrently and others wait, as when the settings change.
+ */
+public class RenderContext {
+    private static final Logger LOG = Logger.getInstance(RenderContext.class);
+
+    private static final Object LOCK = new Object();
+    private static Options applied;
+    private static int active;
+    private static int waiting;
+
+    public static <T, E extends Throwable> T run(@Nullable File baseDir, ThrowableComputable<T, E> action) throws E {
+        enter(Options.from(PlantUmlSettings.getInstance(), baseDir));
+        try {
+            if (baseDir != null) {
+                FileSystem.getInstance().setCurrentDir(new SFile(baseDir.toURI()));
+            } else {
+                FileSystem.getInstance().reset();
+            }
+            return action.compute();
+        } finally {
+            FileSystem.getInstance().reset();
+            exit();
+        }
+    }
+
+    private static void enter(Options options) {
+        long start = System.currentTimeMillis();
+        synchronized (LOCK) {
+            boolean different = !options.equals(applied);
+            if (different) {
+                waiting++;
+            }
+            try {
+                //requests with the applied options do not overtake the waiting ones
+                while (active > 0 && (!options.equals(applied) || waiting > (different ? 1 : 0))) {
+                    LOCK.wait();
+                }
+            } catch (InterruptedException e) {
+                LOCK.notifyAll();
+                throw new RenderingCancelledException(e);
+            } finally {
+                if (different) {
+                    waiting--;
+                }
+            }
+            if (!options.equals(applied)) {
+                options.apply();
+                applied = options;
+            }
+            active++;
+        }
+        LOG.debug("render context entered in ", System.currentTimeMillis() - start, "ms");
+    }
+
+    private static void exit() {
+        synchronized (LOCK) {
+            active--;
+            if (active == 0) {
+                LOCK.notifyAll();
+            }
+        }
+    }
+
+    private static class Options {
+        private final String includePath;
+        /**
+         * null when GRAPHVIZ_DOT is set and preferred
+         */
+        @Nullable
+        private final String dotExecutable;
+        @Nullable
+        private final String limitSize;
+
+        private Options(String includePath, @Nullable String dotExecutable, @Nullable String limitSize) {
+            this.includePath = includePath;
+            this.dotExecutable = dotExecutable;
+            this.limitSize = limitSize;
+        }
+
+        static Options from(PlantUmlSettings settings, @Nullable File baseDir) {
+            StringBuilder includePath = new StringBuilder();
+            if (baseDir != null) {
+                includePath.append(baseDir.getAbsolutePath());
+            }
+            String includedPaths = settings.getIncludedPaths();
+            if (StringUtils.isNotBlank(includedPaths)) {
+                String separator = System.getProperty("path.separator");
+                for (String s : includedPaths.split("\n")) {
+                    if (StringUtils.isNotBlank(s)) {
+                        if (includePath.length() > 0) {
+                            includePath.append(separator);
+                        }
+                        includePath.append(s);
+                    }
+                }
+            }
+
+            boolean propertySet = StringUtils.isNotBlank(System.getProperty("GRAPHVIZ_DOT")) || StringUtils.isNotBlank(System.getenv("GRAPHVIZ_DOT"));
+            String dotExecutable = null;
+            if (!propertySet || !settings.isUsePreferentiallyGRAPHIZ_DOT()) {
+                dotExecutable = String.valueOf(settings.getDotExecutable());
+            }
+
+            String limitSize = null;
+            if (StringUtils.isNotBlank(settings.getPLANTUML_LIMIT_SIZE())) {
+                try {
+                    Integer.parseInt(settings.getPLANTUML_LIMIT_SIZE());
+                    limitSize = settings.getPLANTUML_LIMIT_SIZE();
+                } catch (NumberFormatException e) {
+                    LOG.error("invalid PLANTUML_LIMIT_SIZE", e);
+                }
+            }
+            return new Options(includePath.toString(), dotExecutable, limitSize);
+        }
+
+        void apply() {
+            LOG.debug("applying ", this);
+            if (includePath.isEmpty()) {
+                System.clearProperty("plantuml.include.path");
+            } else {
+                System.setProperty("plantuml.include.path", includePath);
+            }
+            if (dotExecutable != null) {
+                GraphvizUtils.setDotExecutable(dotExecutable.isEmpty() ? null : dotExecutable);
+            }
+            if (limitSize != null) {
+                System.setProperty("PLANTUML_LIMIT_SIZE", limitSize);
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Options options = (Options) o;
+            return includePath.equals(options.includePath)
+                    && Objects.equals(dotExecutable, options.dotExecutable)
+                    && Objects.equals(limitSize, options.limitSize);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(includePath, dotExecutable, limitSize);
+        }
+
+        @Override
+        public String toString() {
+            return "Options{includePath='" + includePath + "', dotExecutable='" + dotExecutable + "', limitSize='" + limitSize + "'}";
+        }
+    }
+}
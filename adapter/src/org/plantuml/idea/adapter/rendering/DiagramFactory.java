@@ -11,6 +11,7 @@ import org.apache.commons.lang.builder.ToStringBuilder;
 import org.apache.commons.lang.builder.ToStringStyle;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import org.plantuml.idea.adapter.DiagramCache;
 import org.plantuml.idea.plantuml.ImageFormat;
 import org.plantuml.idea.rendering.ImageItem;
 import org.plantuml.idea.rendering.RenderRequest;
@@ -28,6 +29,7 @@ public class DiagramFactory {
     private static final Logger LOG = com.intellij.openapi.diagnostic.Logger.getInstance(DiagramFactory.class);
     private final List<MyBlock> myBlocks;
     private final int totalPages;
+    private Set<File> inlinedFiles = Collections.emptySet();
 
     public DiagramFactory(List<MyBlock> myBlocks, int totalPages) {
         this.myBlocks = myBlocks;
@@ -40,16 +42,25 @@ public class DiagramFactory {
     }
 
     public static DiagramFactory create(RenderRequest renderRequest, String documentSource) {
-        SourceStringReader reader = PlantUmlRendererUtil.newSourceStringReader(documentSource, renderRequest);
-        return create(reader, renderRequest);
+        return create(DiagramCache.takeBlocks(documentSource, renderRequest.getSourceFile(), renderRequest.isUseSettings()), renderRequest);
+    }
+
+    public static DiagramFactory create(DiagramCache.Parsed parsed, RenderRequest renderRequest) {
+        DiagramFactory diagramFactory = create(parsed.getBlocks(), renderRequest);
+        diagramFactory.inlinedFiles = parsed.getInlinedFiles();
+        return diagramFactory;
     }
 
     public static DiagramFactory create(SourceStringReader reader, RenderRequest renderRequest) {
+        return create(reader.getBlocks(), renderRequest);
+    }
+
+    public static DiagramFactory create(List<BlockUml> blocks, RenderRequest renderRequest) {
         long start1 = System.currentTimeMillis();
         int totalPages = 0;
         List<MyBlock> myBlocks = new ArrayList<>();
 
-        for (BlockUml blockUml : reader.getBlocks()) {
+        for (BlockUml blockUml : blocks) {
             checkCancel();
             long start = System.currentTimeMillis();
 
@@ -221,6 +232,11 @@ public class DiagramFactory {
                 LOG.warn(e);
             }
         }
+        List<File> inlined = new ArrayList<>(inlinedFiles);
+        inlined.sort(File::compareTo);
+        for (File file : inlined) {
+            includedFiles.put(file, file.lastModified());
+        }
         LOG.debug("getIncludedFiles ", (System.currentTimeMillis() - start), "ms");
         return includedFiles;
     }
@@ -1,6 +1,10 @@
 package org.plantuml.idea.adapter.rendering;
 
+import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VfsUtil;
+import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.openapi.vfs.VirtualFileManager;
 import com.intellij.openapi.vfs.ex.VirtualFileManagerEx;
 import com.intellij.util.io.URLUtil;
@@ -9,55 +13,150 @@ import net.sourceforge.plantuml.FileFormatOption;
 import org.apache.commons.io.IOUtils;
 import org.plantuml.idea.adapter.Format;
 import org.plantuml.idea.lang.settings.PlantUmlSettings;
+import org.plantuml.idea.plantuml.ImageFormat;
+import org.plantuml.idea.rendering.ExportResult;
 import org.plantuml.idea.rendering.RenderRequest;
 
-import java.io.FileOutputStream;
-import java.io.IOException;
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
 
 
 public class PlantUmlExporter {
     protected static final Logger logger = Logger.getInstance(PlantUmlExporter.class);
 
-    public void renderAndSave(RenderRequest renderRequest, String path, String pathPrefix)
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    public ExportResult renderAndSave(RenderRequest renderRequest, String path, String pathPrefix)
             throws IOException {
-        PlantUmlSettings settings = PlantUmlSettings.getInstance();
+        long start = System.currentTimeMillis();
         FileFormat pFormat = Format.from(renderRequest.getFormat());
-        String fileSuffix = pFormat.getFileSuffix();
         int requestedPageNumber = renderRequest.getPage();
         DiagramFactory diagramFactory = DiagramFactory.create(renderRequest, renderRequest.getSource());
 
-        VirtualFileManager vfm = VirtualFileManagerEx.getInstance();
+        List<List<Output>> pages;
         if (requestedPageNumber >= 0) {
-            try (FileOutputStream outputStream = new FileOutputStream(path)) {
-                diagramFactory.outputImage(outputStream, requestedPageNumber, new FileFormatOption(pFormat));
-            }
-            vfm.refreshAndFindFileByUrl(VirtualFileManager.constructUrl(URLUtil.FILE_PROTOCOL, path));
+            pages = Collections.singletonList(Collections.singletonList(new Output(requestedPageNumber, path, pFormat)));
         } else {
             if (pathPrefix == null) {
                 throw new IllegalArgumentException("pathPrefix is null");
             }
-            int totalPages = diagramFactory.getTotalPages();
-            for (int page = 0; page < totalPages; page++) {
-                String resultPath;
-                if (settings.isUsePageTitles()) {
-                    String titleOrPageNumber = diagramFactory.getTitleOrPageNumber(page);
-                    String pageTitleSuffix = "-" + titleOrPageNumber;
-                    if (page == 0 && pathPrefix.endsWith(pageTitleSuffix)) {
-                        pathPrefix = pathPrefix.substring(0, pathPrefix.length() - pageTitleSuffix.length());
-                    }
-                    resultPath = pathPrefix + "-" + titleOrPageNumber + fileSuffix;
-                } else {
-                    if (page == 0) {
-                        resultPath = pathPrefix + fileSuffix;
-                    } else {
-                        resultPath = pathPrefix + "-" + page + fileSuffix;
-                    }
+            pages = new ArrayList<>();
+            addPageOutputs(pages, diagramFactory, pathPrefix, pFormat);
+        }
+        return export(diagramFactory, pages, start);
+    }
+
+    /**
+     * Exports the requested page, or all pages, in each of the formats. The source is parsed once, all pages in all
+     * formats are written from the same diagram.
+     */
+    public ExportResult renderAndSave(RenderRequest renderRequest, Collection<ImageFormat> formats, String pathPrefix)
+            throws IOException {
+        long start = System.currentTimeMillis();
+        if (pathPrefix == null) {
+            throw new IllegalArgumentException("pathPrefix is null");
+        }
+        int requestedPageNumber = renderRequest.getPage();
+        DiagramFactory diagramFactory = DiagramFactory.create(renderRequest, renderRequest.getSource());
+
+        List<List<Output>> pages = new ArrayList<>();
+        if (requestedPageNumber >= 0) {
+            pages.add(new ArrayList<>());
+        }
+        for (ImageFormat format : formats) {
+            FileFormat pFormat = Format.from(format);
+            if (requestedPageNumber >= 0) {
+                pages.get(0).add(new Output(requestedPageNumber, pathPrefix + pFormat.getFileSuffix(), pFormat));
+            } else {
+                addPageOutputs(pages, diagramFactory, pathPrefix, pFormat);
+            }
+        }
+        return export(diagramFactory, pages, start);
+    }
+
+    private void addPageOutputs(List<List<Output>> pages, DiagramFactory diagramFactory, String pathPrefix, FileFormat format) {
+        PlantUmlSettings settings = PlantUmlSettings.getInstance();
+        String fileSuffix = format.getFileSuffix();
+        int totalPages = diagramFactory.getTotalPages();
+        for (int page = 0; page < totalPages; page++) {
+            String resultPath;
+            if (settings.isUsePageTitles()) {
+                String titleOrPageNumber = diagramFactory.getTitleOrPageNumber(page);
+                String pageTitleSuffix = "-" + titleOrPageNumber;
+                if (page == 0 && pathPrefix.endsWith(pageTitleSuffix)) {
+                    pathPrefix = pathPrefix.substring(0, pathPrefix.length() - pageTitleSuffix.length());
                 }
-                try (FileOutputStream outputStream = new FileOutputStream(resultPath)) {
-                    diagramFactory.outputImage(outputStream, page, new FileFormatOption(pFormat));
+                resultPath = pathPrefix + "-" + titleOrPageNumber + fileSuffix;
+            } else {
+                if (page == 0) {
+                    resultPath = pathPrefix + fileSuffix;
+                } else {
+                    resultPath = pathPrefix + "-" + page + fileSuffix;
                 }
-                vfm.refreshAndFindFileByUrl(VirtualFileManager.constructUrl(URLUtil.FILE_PROTOCOL, resultPath));
             }
+            if (pages.size() <= page) {
+                pages.add(new ArrayList<>());
+            }
+            pages.get(page).add(new Output(page, resultPath, format));
+        }
+    }
+
+    private ExportResult export(DiagramFactory diagramFactory, List<List<Output>> pages, long start) throws IOException {
+        writePages(diagramFactory, pages);
+        List<File> outputFiles = new ArrayList<>();
+        for (List<Output> outputs : pages) {
+            for (Output output : outputs) {
+                outputFiles.add(new File(output.path));
+            }
+        }
+        refresh(outputFiles);
+        logger.debug("exported ", outputFiles.size(), " files in ", System.currentTimeMillis() - start, "ms");
+        return new ExportResult(outputFiles, diagramFactory.getIncludedFiles().keySet());
+    }
+
+    /**
+     * Pages of the same diagram must not be exported concurrently, they are written one by one from the single parse.
+     */
+    private void writePages(DiagramFactory diagramFactory, List<List<Output>> pages) throws IOException {
+        for (List<Output> outputs : pages) {
+            for (Output output : outputs) {
+                DiagramFactory.checkCancel();
+                write(diagramFactory, output);
+            }
+        }
+    }
+
+    private void write(DiagramFactory diagramFactory, Output output) throws IOException {
+        try (OutputStream outputStream = new BufferedOutputStream(Files.newOutputStream(Paths.get(output.path)), BUFFER_SIZE)) {
+            diagramFactory.outputImage(outputStream, output.page, new FileFormatOption(output.format));
+        }
+    }
+
+    /**
+     * One asynchronous refresh of the output directories, instead of a synchronous one per file.
+     */
+    private static void refresh(List<File> files) {
+        if (ApplicationManager.getApplication() == null) {
+            return;
+        }
+        LocalFileSystem fileSystem = LocalFileSystem.getInstance();
+        Set<VirtualFile> toRefresh = new LinkedHashSet<>();
+        for (File file : files) {
+            VirtualFile virtualFile = fileSystem.findFileByIoFile(file);
+            if (virtualFile != null) {
+                toRefresh.add(virtualFile);
+            }
+            //new files
+            File parent = file.getParentFile();
+            VirtualFile virtualParent = parent == null ? null : fileSystem.findFileByIoFile(parent);
+            if (virtualParent != null) {
+                toRefresh.add(virtualParent);
+            }
+        }
+        if (!toRefresh.isEmpty()) {
+            VfsUtil.markDirtyAndRefresh(true, false, false, toRefresh.toArray(VirtualFile.EMPTY_ARRAY));
         }
     }
 
@@ -73,4 +172,16 @@ public class PlantUmlExporter {
             throw new RuntimeException(e);
         }
     }
+
+    private static class Output {
+        private final int page;
+        private final String path;
+        private final FileFormat format;
+
+        Output(int page, String path, FileFormat format) {
+            this.page = page;
+            this.path = path;
+            this.format = format;
+        }
+    }
 }
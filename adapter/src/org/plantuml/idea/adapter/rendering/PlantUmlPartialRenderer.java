@@ -8,7 +8,9 @@ import net.sourceforge.plantuml.error.PSystemError;
 import net.sourceforge.plantuml.error.PSystemErrorV2;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import org.plantuml.idea.adapter.DiagramCache;
 import org.plantuml.idea.adapter.Format;
+import org.plantuml.idea.adapter.IncludeResolver;
 import org.plantuml.idea.rendering.*;
 
 import java.io.ByteArrayOutputStream;
@@ -74,8 +76,9 @@ public class PlantUmlPartialRenderer extends PlantUmlNormalRenderer {
         long start = System.currentTimeMillis();
         logger.debug("updating title, page ", page);
 
-        SourceStringReader reader = PlantUmlRendererUtil.newSourceStringReader(partialSource, renderRequest);
-        DiagramFactory diagrams = DiagramFactory.create(reader, null);
+        IncludeResolver.Result resolved = IncludeResolver.resolve(partialSource, renderRequest.getSourceFile());
+        SourceStringReader reader = PlantUmlRendererUtil.newSourceStringReader(resolved, renderRequest.getSourceFile(), renderRequest.isUseSettings());
+        DiagramFactory diagrams = DiagramFactory.create(new DiagramCache.Parsed(reader.getBlocks(), resolved.getInlinedFiles()), null);
         Map<File, Long> includedFiles = diagrams.getIncludedFiles();
         String title = diagrams.getTitle(0);
 
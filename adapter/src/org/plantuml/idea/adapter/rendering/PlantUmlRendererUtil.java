@@ -3,9 +3,14 @@ package org.plantuml.idea.adapter.rendering;
 import com.intellij.openapi.diagnostic.Logger;
 import net.sourceforge.plantuml.SourceStringReader;
 import net.sourceforge.plantuml.preproc.Defines;
-import org.plantuml.idea.adapter.Utils;
+import org.jetbrains.annotations.Nullable;
+import org.plantuml.idea.adapter.IncludeResolver;
+import org.plantuml.idea.adapter.RenderContext;
 import org.plantuml.idea.lang.annotator.LanguageDescriptor;
 import org.plantuml.idea.lang.settings.PlantUmlSettings;
+import org.plantuml.idea.plantuml.ImageFormat;
+import org.plantuml.idea.plantuml.SourceExtractor;
+import org.plantuml.idea.rendering.ExportResult;
 import org.plantuml.idea.rendering.RenderCacheItem;
 import org.plantuml.idea.rendering.RenderRequest;
 import org.plantuml.idea.rendering.RenderResult;
@@ -14,28 +19,34 @@ import org.plantuml.idea.rendering.RenderingCancelledException;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.regex.Pattern;
 
 public class PlantUmlRendererUtil {
     private static final Logger logger = Logger.getInstance(PlantUmlRendererUtil.class);
 
-    public static final Pattern NEW_PAGE_PATTERN = Pattern.compile("\\n\\s*@?(?i)(newpage)(\\p{Blank}+[^\\n]+|\\p{Blank}*)(?=\\n)");
+    public static final Pattern NEW_PAGE_PATTERN = SourceExtractor.NEW_PAGE_PATTERN;
 
     private static final PlantUmlPartialRenderer PARTIAL_RENDERER = new PlantUmlPartialRenderer();
     private static final PlantUmlNormalRenderer NORMAL_RENDERER = new PlantUmlNormalRenderer();
     private static final PlantUmlExporter EXPORTER = new PlantUmlExporter();
 
-    public static void renderAndSave(RenderRequest renderRequest, String path, String pathPrefix)
+    public static ExportResult renderAndSave(RenderRequest renderRequest, String path, String pathPrefix)
             throws IOException {
-        Utils.prepareEnvironment(renderRequest);
+        return RenderContext.run(renderRequest.getBaseDir(), () -> EXPORTER.renderAndSave(renderRequest, path, pathPrefix));
+    }
 
-        EXPORTER.renderAndSave(renderRequest, path, pathPrefix);
+    public static ExportResult renderAndSave(RenderRequest renderRequest, Collection<ImageFormat> formats, String pathPrefix)
+            throws IOException {
+        return RenderContext.run(renderRequest.getBaseDir(), () -> EXPORTER.renderAndSave(renderRequest, formats, pathPrefix));
     }
 
     public static RenderResult render(RenderRequest renderRequest, RenderCacheItem cachedItem) {
-        Utils.prepareEnvironment(renderRequest);
+        return RenderContext.run(renderRequest.getBaseDir(), () -> doRender(renderRequest, cachedItem));
+    }
 
+    private static RenderResult doRender(RenderRequest renderRequest, RenderCacheItem cachedItem) {
         long start = System.currentTimeMillis();
         String source = renderRequest.getSource();
         String[] sourceSplit = NEW_PAGE_PATTERN.split(source);
@@ -58,11 +69,18 @@ public class PlantUmlRendererUtil {
 
 
     public static SourceStringReader newSourceStringReader(String source, RenderRequest renderRequest) {
-        File file = renderRequest.getSourceFile();
+        return newSourceStringReader(source, renderRequest.getSourceFile(), renderRequest.isUseSettings());
+    }
+
+    public static SourceStringReader newSourceStringReader(String source, @Nullable File file, boolean useSettings) {
+        return newSourceStringReader(IncludeResolver.resolve(source, file), file, useSettings);
+    }
+
+    public static SourceStringReader newSourceStringReader(IncludeResolver.Result resolved, @Nullable File file, boolean useSettings) {
         long start = System.currentTimeMillis();
         List<String> configAsList;
         String encoding;
-        if (renderRequest.isUseSettings()) {
+        if (useSettings) {
             PlantUmlSettings settings = PlantUmlSettings.getInstance();
             encoding = settings.getEncoding();
             configAsList = settings.getConfigAsList();
@@ -78,7 +96,7 @@ public class PlantUmlRendererUtil {
         } else {
             defines = Defines.createEmpty();
         }
-        SourceStringReader sourceStringReader = new SourceStringReader(defines, source, encoding, configAsList);
+        SourceStringReader sourceStringReader = new SourceStringReader(defines, resolved.getSource(), encoding, configAsList);
         logger.debug("newSourceStringReader ", System.currentTimeMillis() - start, "ms");
         return sourceStringReader;
     }
@@ -0,0 +1,241 @@
+package org.plantuml.idea.adapter.rendering;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.Disposer;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.jetbrains.annotations.Nullable;
+import org.plantuml.idea.adapter.IncludeResolver;
+import org.plantuml.idea.adapter.Utils;
+import org.plantuml.idea.external.SharedRenderServer;
+import org.plantuml.idea.plantuml.ImageFormat;
+import org.plantuml.idea.rendering.ImageItem;
+import org.plantuml.idea.rendering.RenderRequest;
+import org.plantuml.idea.rendering.RenderResult;
+import org.plantuml.idea.rendering.RenderingCancelledException;
+import org.plantuml.idea.toolwindow.Zoom;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+
+/**
+ * Server of this process shared with other IDE processes, see {@link SharedRenderServer}.
+ * <p>
+ * Answers {@code /{token}/svg|png/[page/]encoded} like the PlantUML server, rendered with the settings of this
+ * process. Includes are read from disk, the client inlined its unsaved documents already, and listed in
+ * {@link SharedRenderServer#HEADER_INCLUDED} headers, title and file name of the page are sent in headers too. The client requests pages concurrently, all pages are
+ * rendered by the first request from one parse and kept for the others until an included file changes.
+ */
+public class SharedRenderServerHost {
+    private static final Logger LOG = Logger.getInstance(SharedRenderServerHost.class);
+    private static final int THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    private static final int MAX_RENDERS = 8;
+    private static final long MAX_AGE_MILLIS = 30_000;
+
+    private static HttpServer server;
+
+    private final String token;
+    private final Function<RenderRequest, RenderResult> renderer;
+    private final Map<Key, Render> renders = new LinkedHashMap<Key, Render>(MAX_RENDERS + 1, 1, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Render> eldest) {
+            return size() > MAX_RENDERS;
+        }
+    };
+
+    SharedRenderServerHost(String token, Function<RenderRequest, RenderResult> renderer) {
+        this.token = token;
+        this.renderer = renderer;
+    }
+
+    public static synchronized void ensureStarted() {
+        if (server != null) {
+            return;
+        }
+        String token = SharedRenderServer.newToken();
+        try {
+            SharedRenderServerHost host = new SharedRenderServerHost(token, renderRequest -> IncludeResolver.fromDisk(() -> PlantUmlRendererUtil.render(renderRequest, null)));
+            HttpServer httpServer = host.createServer();
+            httpServer.setExecutor(AppExecutorUtil.createBoundedApplicationPoolExecutor("PlantUML shared render server", THREADS));
+            httpServer.start();
+            int port = httpServer.getAddress().getPort();
+            SharedRenderServer.publish(port, token);
+            server = httpServer;
+            Disposer.register(ApplicationManager.getApplication(), () -> stop(httpServer, port, token));
+        } catch (IOException e) {
+            LOG.warn("unable to start shared render server", e);
+        }
+    }
+
+    private static synchronized void stop(HttpServer httpServer, int port, String token) {
+        SharedRenderServer.unpublish(port, token);
+        httpServer.stop(0);
+        server = null;
+    }
+
+    HttpServer createServer() throws IOException {
+        HttpServer httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        httpServer.createContext("/" + token, this::handle);
+        return httpServer;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String path = exchange.getRequestURI().getRawPath().substring(token.length() + 1);
+            if (SharedRenderServer.PING.equals(path)) {
+                respond(exchange, 200, "text/plain", new byte[0]);
+                return;
+            }
+            //"", type, [page], encoded
+            String[] split = path.split("/");
+            if (split.length < 3 || split.length > 4 || !"GET".equals(exchange.getRequestMethod())) {
+                respond(exchange, 404, "text/plain", new byte[0]);
+                return;
+            }
+            ImageFormat format = "svg".equals(split[1]) ? ImageFormat.SVG : ImageFormat.PNG;
+            int page = split.length == 4 ? Integer.parseInt(split[2]) : 0;
+            String source = Utils.decode(split[split.length - 1]);
+            String zoom = exchange.getRequestHeaders().getFirst(SharedRenderServer.HEADER_ZOOM);
+            String sourceFilePath = exchange.getRequestHeaders().getFirst(SharedRenderServer.HEADER_SOURCE_FILE);
+
+            RenderResult renderResult = render(new Key(sourceFilePath, source, format, zoom != null ? Integer.parseInt(zoom) : 100));
+            for (Map.Entry<File, Long> entry : renderResult.getIncludedFiles().entrySet()) {
+                exchange.getResponseHeaders().add(SharedRenderServer.HEADER_INCLUDED, SharedRenderServer.includedHeader(entry.getKey(), entry.getValue()));
+            }
+            ImageItem imageItem = renderResult.getImageItem(page);
+            if (imageItem == null || !imageItem.hasImageBytes()) {
+                LOG.debug("nothing rendered for page ", page);
+                respond(exchange, 400, "text/plain", new byte[0]);
+                return;
+            }
+            if (imageItem.getTitle() != null) {
+                exchange.getResponseHeaders().add(SharedRenderServer.HEADER_TITLE, SharedRenderServer.encodeHeader(imageItem.getTitle()));
+            }
+            if (imageItem.getCustomFileName() != null) {
+                exchange.getResponseHeaders().add(SharedRenderServer.HEADER_FILENAME, SharedRenderServer.encodeHeader(imageItem.getCustomFileName()));
+            }
+            respond(exchange, imageItem.hasError() ? 400 : 200, format == ImageFormat.SVG ? "image/svg+xml" : "image/png", imageItem.getImageBytes());
+        } catch (IOException | RuntimeException e) {
+            LOG.warn(e);
+            if (exchange.getResponseCode() == -1) {
+                respond(exchange, 400, "text/plain", new byte[0]);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Renders all pages, or waits for the render of another request of the same source.
+     */
+    private RenderResult render(Key key) {
+        Render render;
+        boolean owner = false;
+        synchronized (renders) {
+            render = renders.get(key);
+            if (render == null || render.isObsolete()) {
+                render = new Render();
+                renders.put(key, render);
+                owner = true;
+            }
+        }
+        if (owner) {
+            try {
+                RenderRequest renderRequest = new RenderRequest(key.sourceFilePath, key.source, key.format, -1, new Zoom(key.zoom), null, false, null);
+                renderRequest.disableSvgZoom();
+                render.result.complete(renderer.apply(renderRequest));
+            } catch (Throwable e) {
+                synchronized (renders) {
+                    renders.remove(key, render);
+                }
+                render.result.completeExceptionally(e);
+                throw e;
+            }
+        }
+        try {
+            return render.result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RenderingCancelledException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        if (body.length > 0) {
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    private static class Render {
+        private final CompletableFuture<RenderResult> result = new CompletableFuture<>();
+        private final long created = System.currentTimeMillis();
+
+        /**
+         * A running render is shared. A finished one is kept until an included file changes, and not longer than
+         * {@link #MAX_AGE_MILLIS}, the settings might have changed.
+         */
+        boolean isObsolete() {
+            if (!result.isDone()) {
+                return false;
+            }
+            if (System.currentTimeMillis() - created > MAX_AGE_MILLIS) {
+                return true;
+            }
+            for (Map.Entry<File, Long> entry : result.join().getIncludedFiles().entrySet()) {
+                if (entry.getKey().lastModified() != entry.getValue()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static class Key {
+        @Nullable
+        private final String sourceFilePath;
+        private final String source;
+        private final ImageFormat format;
+        private final int zoom;
+
+        Key(@Nullable String sourceFilePath, String source, ImageFormat format, int zoom) {
+            this.sourceFilePath = sourceFilePath;
+            this.source = source;
+            this.format = format;
+            this.zoom = zoom;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return zoom == key.zoom
+                    && Objects.equals(sourceFilePath, key.sourceFilePath)
+                    && source.equals(key.source)
+                    && format == key.format;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(sourceFilePath, source, format, zoom);
+        }
+    }
+}
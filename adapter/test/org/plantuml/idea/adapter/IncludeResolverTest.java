@@ -0,0 +1,118 @@
+package org.plantuml.idea.adapter;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+
+public class IncludeResolverTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void inlinesUnsavedIncludes() throws Exception {
+        File dir = folder.getRoot();
+        File unsaved = IncludeResolver.normalize(folder.newFile("unsaved.puml"));
+        File saved = IncludeResolver.normalize(new File(folder.newFolder("sub"), "saved.puml"));
+        Assert.assertTrue(saved.createNewFile());
+        Map<File, CharSequence> documents = new HashMap<>();
+        documents.put(unsaved, "@startuml\nclass A\n!include sub/saved.puml\n@enduml");
+
+        IncludeResolver.Result result = IncludeResolver.resolve("@startuml\n!include unsaved.puml\n!include_once unsaved.puml\nA->B\n@enduml", dir, documents::get, StandardCharsets.UTF_8);
+
+        Assert.assertNotNull(result);
+        Assert.assertEquals("@startuml\nclass A\n!include " + saved.getPath() + "\n\nA->B\n@enduml", result.getSource());
+        Assert.assertEquals(Collections.singleton(unsaved), result.getInlinedFiles());
+    }
+
+    @Test
+    public void keepsSavedIncludes() throws Exception {
+        folder.newFile("saved.puml");
+        String source = "@startuml\n!include saved.puml\n!include <C4/C4_Container>\n@enduml";
+
+        IncludeResolver.Result result = IncludeResolver.resolve(source, folder.getRoot(), file -> null, StandardCharsets.UTF_8);
+
+        Assert.assertNotNull(result);
+        Assert.assertEquals(source, result.getSource());
+        Assert.assertTrue(result.getInlinedFiles().isEmpty());
+    }
+
+    @Test
+    public void inlinesSavedIncludeOfUnsavedInclude() throws Exception {
+        File sub = folder.newFolder("sub");
+        File saved = IncludeResolver.normalize(new File(sub, "saved.puml"));
+        Files.write(saved.toPath(), "class S\n!include unsaved.puml".getBytes(StandardCharsets.UTF_8));
+        File unsaved = IncludeResolver.normalize(new File(sub, "unsaved.puml"));
+        Assert.assertTrue(unsaved.createNewFile());
+        Map<File, CharSequence> documents = new HashMap<>();
+        documents.put(unsaved, "class U");
+
+        IncludeResolver.Result result = IncludeResolver.resolve("@startuml\n!include sub/saved.puml\n@enduml", folder.getRoot(), documents::get, StandardCharsets.UTF_8);
+
+        Assert.assertNotNull(result);
+        Assert.assertEquals("@startuml\nclass S\nclass U\n@enduml", result.getSource());
+        Assert.assertEquals(new HashSet<>(Arrays.asList(saved, unsaved)), result.getInlinedFiles());
+    }
+
+    @Test
+    public void readsSavedIncludeInConfiguredEncoding() throws Exception {
+        File saved = IncludeResolver.normalize(folder.newFile("saved.puml"));
+        Files.write(saved.toPath(), "class \u00c4\n!include unsaved.puml".getBytes(StandardCharsets.ISO_8859_1));
+        File unsaved = IncludeResolver.normalize(folder.newFile("unsaved.puml"));
+        Map<File, CharSequence> documents = new HashMap<>();
+        documents.put(unsaved, "class U");
+
+        IncludeResolver.Result result = IncludeResolver.resolve("@startuml\n!include saved.puml\n@enduml", folder.getRoot(), documents::get, StandardCharsets.ISO_8859_1);
+
+        Assert.assertNotNull(result);
+        Assert.assertEquals("@startuml\nclass \u00c4\nclass U\n@enduml", result.getSource());
+    }
+
+    @Test
+    public void keepsSavedIncludeOfSavedInclude() throws Exception {
+        Files.write(folder.newFile("saved.puml").toPath(), "!include other.puml".getBytes(StandardCharsets.UTF_8));
+        folder.newFile("other.puml");
+        String source = "@startuml\n!include saved.puml\n@enduml";
+
+        IncludeResolver.Result result = IncludeResolver.resolve(source, folder.getRoot(), file -> null, StandardCharsets.UTF_8);
+
+        Assert.assertNotNull(result);
+        Assert.assertEquals(source, result.getSource());
+        Assert.assertTrue(result.getInlinedFiles().isEmpty());
+    }
+
+    @Test
+    public void inlinesQuotedUnsavedInclude() throws Exception {
+        File unsaved = IncludeResolver.normalize(folder.newFile("with space.puml"));
+        Map<File, CharSequence> documents = new HashMap<>();
+        documents.put(unsaved, "class Q");
+
+        IncludeResolver.Result result = IncludeResolver.resolve("@startuml\n!include \"with space.puml\"\n@enduml", folder.getRoot(), documents::get, StandardCharsets.UTF_8);
+
+        Assert.assertNotNull(result);
+        Assert.assertEquals("@startuml\nclass Q\n@enduml", result.getSource());
+        Assert.assertEquals(Collections.singleton(unsaved), result.getInlinedFiles());
+    }
+
+    @Test
+    public void block() {
+        String content = "@startuml(id=first)\nA->B\n@enduml\n@startuml(id=second)\nC->D\n@enduml";
+        Assert.assertEquals("A->B", IncludeResolver.block(content, null));
+        Assert.assertEquals("C->D", IncludeResolver.block(content, "1"));
+        Assert.assertEquals("C->D", IncludeResolver.block(content, "second"));
+        Assert.assertNull(IncludeResolver.block(content, "third"));
+        Assert.assertEquals("A->B", IncludeResolver.block("A->B", null));
+    }
+
+    @Test
+    public void subPart() {
+        String content = "A->B\n!startsub PART\nC->D\n!endsub\nE->F";
+        Assert.assertEquals("C->D", IncludeResolver.subPart(content, "PART"));
+        Assert.assertNull(IncludeResolver.subPart(content, null));
+    }
+}
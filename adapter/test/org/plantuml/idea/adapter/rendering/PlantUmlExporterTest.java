@@ -0,0 +1,39 @@
+package org.plantuml.idea.adapter.rendering;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.plantuml.idea.plantuml.ImageFormat;
+import org.plantuml.idea.rendering.ExportResult;
+import org.plantuml.idea.rendering.RenderRequest;
+import org.plantuml.idea.toolwindow.Zoom;
+
+import java.io.File;
+import java.util.Arrays;
+
+public class PlantUmlExporterTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void exportsAllPagesInAllFormats() throws Exception {
+        String source = "@startuml\nA->B\nnewpage\nC->D\n@enduml";
+        File sourceFile = folder.newFile("diagram.puml");
+        String pathPrefix = new File(folder.getRoot(), "diagram").getPath();
+        RenderRequest renderRequest = new RenderRequest(sourceFile.getPath(), source, ImageFormat.PNG, -1, new Zoom(100), null, false, null);
+
+        ExportResult result = new PlantUmlExporter().renderAndSave(renderRequest, Arrays.asList(ImageFormat.PNG, ImageFormat.SVG), pathPrefix);
+
+        Assert.assertEquals(4, result.getOutputFiles().size());
+        int png = 0;
+        int svg = 0;
+        for (File file : result.getOutputFiles()) {
+            Assert.assertTrue(file.getName(), file.length() > 0);
+            png += file.getName().endsWith(".png") ? 1 : 0;
+            svg += file.getName().endsWith(".svg") ? 1 : 0;
+        }
+        Assert.assertEquals(2, png);
+        Assert.assertEquals(2, svg);
+    }
+}
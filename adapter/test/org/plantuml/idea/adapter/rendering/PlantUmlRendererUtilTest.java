@@ -1,7 +1,9 @@
 package org.plantuml.idea.adapter.rendering;
 
 import org.junit.Assert;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.plantuml.idea.adapter.FacadeImpl;
 import org.plantuml.idea.plantuml.ImageFormat;
 import org.plantuml.idea.rendering.RenderCommand;
@@ -9,9 +11,16 @@ import org.plantuml.idea.rendering.RenderRequest;
 import org.plantuml.idea.rendering.RenderResult;
 import org.plantuml.idea.toolwindow.Zoom;
 
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
 import static org.plantuml.idea.adapter.rendering.PlantUmlRendererUtil.NEW_PAGE_PATTERN;
 
 public class PlantUmlRendererUtilTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     @Test
     public void render() throws Exception {
         RenderResult render = new FacadeImpl().render(new RenderRequest("sourceFilePath", "@startuml\n" +
@@ -32,6 +41,21 @@ public class PlantUmlRendererUtilTest {
         Assert.assertTrue(render.hasError());
     }
 
+    @Test
+    public void renderNestedIncludeFromDiagramDir() throws Exception {
+        File root = folder.getRoot();
+        write(new File(root, "common.iuml"), "xxx->yyy\n");
+        //resolved against the dir of the diagram, not of sub/a.iuml
+        write(new File(root, "sub/a.iuml"), "!include common.iuml\n");
+        File diagram = write(new File(root, "diagram.puml"), "");
+
+        RenderResult render = PlantUmlRendererUtil.render(new RenderRequest(diagram.getAbsolutePath(), "@startuml\n" +
+                "!include sub/a.iuml\n" +
+                "@enduml", ImageFormat.PNG, 0, new Zoom(100), null, false, RenderCommand.Reason.REFRESH), null);
+
+        Assert.assertFalse(render.hasError());
+    }
+
     @Test
     public void splitNewPage() throws Exception {
         String[] strings = NEW_PAGE_PATTERN.split("@startuml\n" +
@@ -57,4 +81,9 @@ public class PlantUmlRendererUtilTest {
                 strings);
     }
 
-}
\ No newline at end of file
+    private static File write(File file, String text) throws Exception {
+        Assert.assertTrue(file.getParentFile().isDirectory() || file.getParentFile().mkdirs());
+        Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
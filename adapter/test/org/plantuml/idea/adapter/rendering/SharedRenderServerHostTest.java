@@ -0,0 +1,138 @@
+package org.plantuml.idea.adapter.rendering;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.plantuml.idea.adapter.Utils;
+import org.plantuml.idea.external.SharedRenderServer;
+import org.plantuml.idea.plantuml.ImageFormat;
+import org.plantuml.idea.rendering.ImageItem;
+import org.plantuml.idea.rendering.RenderRequest;
+import org.plantuml.idea.rendering.RenderResult;
+import org.plantuml.idea.rendering.RenderingType;
+
+import java.io.File;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+public class SharedRenderServerHostTest {
+    private static final String SOURCE = "@startuml\nA->B\nnewpage\nC->D\n@enduml";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private final List<RenderRequest> renders = new CopyOnWriteArrayList<>();
+    private HttpServer server;
+    private String prefix;
+    private File included;
+
+    @After
+    public void tearDown() {
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void rendersAllPagesOnce() throws Exception {
+        start();
+
+        HttpResponse<byte[]> page0 = get("/svg/0/" + Utils.encode(SOURCE));
+        HttpResponse<byte[]> page1 = get("/svg/1/" + Utils.encode(SOURCE));
+
+        Assert.assertEquals(200, page0.statusCode());
+        Assert.assertEquals("page 0", new String(page0.body(), StandardCharsets.UTF_8));
+        Assert.assertEquals("page 1", new String(page1.body(), StandardCharsets.UTF_8));
+        Assert.assertEquals(1, renders.size());
+        Assert.assertEquals(-1, renders.get(0).getPage());
+        Assert.assertEquals(ImageFormat.SVG, renders.get(0).getFormat());
+        Assert.assertEquals("/diagram.puml", renders.get(0).getSourceFilePath());
+        Assert.assertEquals(150, renders.get(0).getZoom().getUnscaledZoom());
+    }
+
+    @Test
+    public void listsIncludedFiles() throws Exception {
+        start();
+
+        HttpResponse<byte[]> response = get("/svg/0/" + Utils.encode(SOURCE));
+
+        Map<File, Long> includedFiles = SharedRenderServer.parseIncluded(response.headers().allValues(SharedRenderServer.HEADER_INCLUDED));
+        Assert.assertEquals(Collections.singletonMap(included.getAbsoluteFile(), included.lastModified()), includedFiles);
+    }
+
+    @Test
+    public void sendsTitleAndFileName() throws Exception {
+        start();
+
+        HttpResponse<byte[]> response = get("/svg/1/" + Utils.encode(SOURCE));
+
+        Assert.assertEquals("Title \u00e4 1", SharedRenderServer.decodeHeader(response.headers().firstValue(SharedRenderServer.HEADER_TITLE).orElse(null)));
+        Assert.assertEquals("file 1", SharedRenderServer.decodeHeader(response.headers().firstValue(SharedRenderServer.HEADER_FILENAME).orElse(null)));
+    }
+
+    @Test
+    public void rendersAgainWhenIncludedFileChanges() throws Exception {
+        start();
+        get("/svg/0/" + Utils.encode(SOURCE));
+
+        Assert.assertTrue(included.setLastModified(included.lastModified() - 10_000));
+        get("/svg/1/" + Utils.encode(SOURCE));
+
+        Assert.assertEquals(2, renders.size());
+    }
+
+    @Test
+    public void rendersOtherFormatSeparately() throws Exception {
+        start();
+        get("/svg/0/" + Utils.encode(SOURCE));
+        get("/png/0/" + Utils.encode(SOURCE));
+
+        Assert.assertEquals(2, renders.size());
+        Assert.assertEquals(ImageFormat.PNG, renders.get(1).getFormat());
+    }
+
+    @Test
+    public void rejectsOtherToken() throws Exception {
+        start();
+
+        HttpRequest request = HttpRequest.newBuilder(URI.create(prefix.replace("/token", "/other") + "/svg/0/" + Utils.encode(SOURCE))).build();
+
+        Assert.assertEquals(404, client.send(request, HttpResponse.BodyHandlers.ofByteArray()).statusCode());
+        Assert.assertTrue(renders.isEmpty());
+    }
+
+    private void start() throws Exception {
+        included = folder.newFile("included.iuml");
+        server = new SharedRenderServerHost("token", renderRequest -> {
+            renders.add(renderRequest);
+            RenderResult renderResult = new RenderResult(RenderingType.NORMAL, 2);
+            for (int page = 0; page < 2; page++) {
+                byte[] bytes = ("page " + page).getBytes(StandardCharsets.UTF_8);
+                renderResult.addRenderedImage(new ImageItem(null, renderRequest.getFormat(), renderRequest.getSource(), null, page, "OK", bytes, null, RenderingType.NORMAL, "Title \u00e4 " + page, "file " + page, null));
+            }
+            LinkedHashMap<File, Long> includedFiles = new LinkedHashMap<>();
+            includedFiles.put(included.getAbsoluteFile(), included.lastModified());
+            renderResult.setIncludedFiles(includedFiles);
+            return renderResult;
+        }).createServer();
+        server.start();
+        prefix = "http://127.0.0.1:" + server.getAddress().getPort() + "/token";
+    }
+
+    private HttpResponse<byte[]> get(String path) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(prefix + path))
+                .header(SharedRenderServer.HEADER_SOURCE_FILE, "/diagram.puml")
+                .header(SharedRenderServer.HEADER_ZOOM, "150")
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+    }
+}
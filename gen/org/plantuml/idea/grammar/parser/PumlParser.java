@@ -72,7 +72,7 @@ public class PumlParser implements PsiParser, LightPsiParser {
     }
 
     /* ********************************************************** */
-    // (include|item|COMMENT|NEW_LINE)*
+    // (<<block>>|include|item|COMMENT|NEW_LINE)*
     static boolean simpleFile(PsiBuilder b, int l) {
         if (!recursion_guard_(b, l, "simpleFile")) return false;
         while (true) {
@@ -83,11 +83,12 @@ public class PumlParser implements PsiParser, LightPsiParser {
         return true;
     }
 
-  // include|item|COMMENT|NEW_LINE
+  // <<block>>|include|item|COMMENT|NEW_LINE
     private static boolean simpleFile_0(PsiBuilder b, int l) {
       if (!recursion_guard_(b, l, "simpleFile_0")) return false;
       boolean r;
-      r = include(b, l + 1);
+      r = block(b, l + 1);
+      if (!r) r = include(b, l + 1);
       if (!r) r = item(b, l + 1);
       if (!r) r = consumeToken(b, COMMENT);
       if (!r) r = consumeToken(b, NEW_LINE);
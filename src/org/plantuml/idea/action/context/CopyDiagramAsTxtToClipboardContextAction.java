@@ -37,10 +37,13 @@ public class CopyDiagramAsTxtToClipboardContextAction extends DumbAwareAction {
         ImageContainer data = (ImageContainer) e.getData(ImageContainer.CONTEXT_COMPONENT);
         if (data != null) {
             RenderRequest renderRequest = data.getRenderRequest();
-            RenderResult render = PlantUmlFacade.get().render(new RenderRequest(renderRequest, getFormat()), null);
+            byte[] firstDiagramBytes = data.getImageItem().getReusableImageBytes(renderRequest, getFormat(), renderRequest.getZoom());
+            if (firstDiagramBytes == null) {
+                RenderResult render = PlantUmlFacade.get().render(new RenderRequest(renderRequest, getFormat(), data.getPage()), null);
+                firstDiagramBytes = render.getFirstDiagramBytes();
+            }
 
             try {
-                byte[] firstDiagramBytes = render.getFirstDiagramBytes();
                 if (firstDiagramBytes != null) {
                     CopyPasteManager.getInstance().setContents(new TextTransferable(new String(firstDiagramBytes, CharsetToolkit.UTF8)));
                 } else {
@@ -41,7 +41,7 @@ public class CopyPlantUmlServerLinkContextAction extends DumbAwareAction {
             try {
                 String encoded = PlantUmlFacade.get().encode(source);
                 PlantUmlSettings instance = PlantUmlSettings.getInstance();
-                String serverUrl = instance.getServerPrefix();
+                String serverUrl = instance.getServerPrefixes().get(0);
                 String serverClipboardLinkType = instance.getServerClipboardLinkType();
                 CopyPasteManager.getInstance().setContents(new TextTransferable(serverUrl + "/" + serverClipboardLinkType + "/" + encoded));
             } catch (Exception e1) {
@@ -5,6 +5,7 @@ import com.intellij.openapi.actionSystem.AnActionEvent;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.fileChooser.FileChooserFactory;
 import com.intellij.openapi.fileChooser.FileSaverDescriptor;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
 import com.intellij.openapi.project.DumbAwareAction;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.project.ProjectUtil;
@@ -15,6 +16,7 @@ import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.util.registry.Registry;
 import com.intellij.openapi.vfs.LocalFileSystem;
 import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileManager;
 import com.intellij.openapi.vfs.VirtualFileWrapper;
 import com.intellij.util.ArrayUtil;
 import org.apache.commons.lang.StringUtils;
@@ -28,6 +30,7 @@ import org.plantuml.idea.rendering.RenderCacheItem;
 import org.plantuml.idea.rendering.RenderResult;
 import org.plantuml.idea.rendering.RenderingType;
 import org.plantuml.idea.toolwindow.PlantUmlToolWindow;
+import org.plantuml.idea.toolwindow.Zoom;
 import org.plantuml.idea.util.UIUtils;
 
 import javax.swing.*;
@@ -135,17 +138,27 @@ public abstract class AbstractSaveDiagramAction extends DumbAwareAction {
                     if (displayedItem.getRenderRequest().getFormat() != imageFormat) {
                         throw new RuntimeException("wrong format");
                     }
-                    if (renderResult.getPages() > 1) {
-                        throw new RuntimeException("renderResult.getPages() > 1");
+                    int pageNumber = getPageNumber(e);
+                    if (pageNumber >= 0 || renderResult.getPages() == 1) {
+                        saveRemotePage(renderResult, Math.max(pageNumber, 0), file.getAbsolutePath());
+                    } else {
+                        for (int page = 0; page < renderResult.getPages(); page++) {
+                            String path = page == 0 ? pathPrefix + "." + extension : pathPrefix + "-" + page + "." + extension;
+                            saveRemotePage(renderResult, page, path);
+                        }
                     }
-                    ImageItem imageItem = renderResult.getImageItem(0);
-                    byte[] imageBytes = imageItem.getImageBytes();
-                    PlantUmlFacade.get().save(file.getAbsolutePath(), imageBytes);
                 } else {
-                    PlantUmlFacade.get().renderAndSave(selectedSource, sourceFile,
-                            imageFormat, file.getAbsolutePath(), pathPrefix,
-                            UIUtils.getPlantUmlToolWindow(project).getZoom(), getPageNumber(e));
-
+                    Zoom zoom = UIUtils.getPlantUmlToolWindow(project).getZoom();
+                    int pageNumber = getPageNumber(e);
+                    byte[] displayedBytes = getDisplayedBytes(displayedItem, pageNumber, imageFormat, zoom);
+                    if (displayedBytes != null) {
+                        logger.debug("saving displayed page ", pageNumber);
+                        PlantUmlFacade.get().save(file.getAbsolutePath(), displayedBytes);
+                    } else {
+                        PlantUmlFacade.get().renderAndSave(selectedSource, sourceFile,
+                                imageFormat, file.getAbsolutePath(), pathPrefix,
+                                zoom, pageNumber);
+                    }
                 }
 
 
@@ -158,6 +171,29 @@ public abstract class AbstractSaveDiagramAction extends DumbAwareAction {
         }
     }
 
+    private void saveRemotePage(RenderResult renderResult, int page, String path) throws IOException {
+        ImageItem imageItem = renderResult.getImageItem(page);
+        if (imageItem == null || !imageItem.hasImageBytes()) {
+            throw new IOException("page " + (page + 1) + " is not rendered, display it first");
+        }
+        PlantUmlFacade.get().save(path, imageItem.getImageBytes());
+    }
+
+    /**
+     * All pages are always rendered, their file naming is up to the exporter.
+     */
+    @Nullable
+    private byte[] getDisplayedBytes(RenderCacheItem displayedItem, int pageNumber, ImageFormat imageFormat, Zoom zoom) {
+        if (pageNumber < 0) {
+            return null;
+        }
+        ImageItem imageItem = displayedItem.getImageItem(pageNumber);
+        if (imageItem == null || displayedItem.includedFilesChanged(FileDocumentManager.getInstance(), VirtualFileManager.getInstance())) {
+            return null;
+        }
+        return imageItem.getReusableImageBytes(displayedItem.getRenderRequest(), imageFormat, zoom);
+    }
+
     @NotNull
     private String[] getExtensions(String defaultExtension) {
         String[] extensions;
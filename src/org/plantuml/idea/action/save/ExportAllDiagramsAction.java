@@ -0,0 +1,269 @@
+package org.plantuml.idea.action.save;
+
+import com.intellij.notification.Notifications;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.actionSystem.CommonDataKeys;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.Task;
+import com.intellij.openapi.project.DumbAwareAction;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ProjectFileIndex;
+import com.intellij.openapi.ui.MessageType;
+import com.intellij.openapi.vfs.VfsUtilCore;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.plantuml.idea.external.PlantUmlFacade;
+import org.plantuml.idea.lang.settings.PlantUmlSettings;
+import org.plantuml.idea.plantuml.ImageFormat;
+import org.plantuml.idea.plantuml.SourceExtractor;
+import org.plantuml.idea.rendering.ExportResult;
+import org.plantuml.idea.rendering.RenderingCancelledException;
+import org.plantuml.idea.toolwindow.Zoom;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.plantuml.idea.util.UIUtils.notification;
+
+/**
+ * Exports all diagrams of the selected files and directories next to their sources, in the default export format.
+ * Each diagram is parsed once, also when exported in several formats.
+ * <p>
+ * Diagrams are rendered concurrently by a bounded pool. Output files are named like by the PlantUML command line -
+ * the first diagram of a file after the file, the next ones with {@code _001}, {@code _002}... suffix, pages
+ * according to the page titles setting.
+ * <p>
+ * Diagrams exported before with the same inputs are skipped, see {@link ExportManifest}.
+ */
+public class ExportAllDiagramsAction extends DumbAwareAction {
+    private static final Logger LOG = Logger.getInstance(ExportAllDiagramsAction.class);
+
+    private static final int THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    private static final int MAX_REPORTED_ERRORS = 10;
+
+    @Override
+    public void actionPerformed(@NotNull AnActionEvent e) {
+        Project project = e.getProject();
+        VirtualFile[] roots = e.getData(CommonDataKeys.VIRTUAL_FILE_ARRAY);
+        if (project == null || roots == null || roots.length == 0) {
+            return;
+        }
+        Collection<ImageFormat> formats = chooseFormats(project);
+        if (formats == null || formats.isEmpty()) {
+            return;
+        }
+
+        new Task.Backgroundable(project, "Exporting PlantUML diagrams", true) {
+            @Override
+            public void run(@NotNull ProgressIndicator indicator) {
+                export(project, roots, formats, indicator);
+            }
+        }.queue();
+    }
+
+    /**
+     * @return null when cancelled
+     */
+    @Nullable
+    protected Collection<ImageFormat> chooseFormats(Project project) {
+        return Collections.singletonList(PlantUmlSettings.getInstance().getDefaultExportFileFormatEnum());
+    }
+
+    private static void export(Project project, VirtualFile[] roots, Collection<ImageFormat> formats, ProgressIndicator indicator) {
+        long start = System.currentTimeMillis();
+        indicator.setIndeterminate(false);
+        indicator.setText("Searching for PlantUML diagrams");
+        List<Job> jobs = collect(project, roots, indicator);
+        LOG.debug("found ", jobs.size(), " diagrams in ", System.currentTimeMillis() - start, "ms");
+
+        indicator.setText("Exporting " + jobs.size() + " PlantUML diagrams");
+        Zoom zoom = new Zoom(100);
+        ExportManifest manifest = ExportManifest.load();
+        String options = renderOptions(formats);
+        AtomicInteger done = new AtomicInteger();
+        AtomicInteger exported = new AtomicInteger();
+        AtomicInteger upToDate = new AtomicInteger();
+        List<String> errors = Collections.synchronizedList(new ArrayList<>());
+        ExecutorService executor = AppExecutorUtil.createBoundedApplicationPoolExecutor("PlantUML export", THREADS);
+        List<Future<?>> futures = new ArrayList<>();
+        for (Job job : jobs) {
+            futures.add(executor.submit(() -> {
+                if (indicator.isCanceled()) {
+                    return;
+                }
+                indicator.setText2(job.file.getPresentableUrl());
+                try {
+                    File sourceFile = new File(job.file.getPath());
+                    String inputHash = ExportManifest.inputHash(job.source, sourceFile, options);
+                    if (manifest.isUpToDate(job.pathPrefix, inputHash)) {
+                        upToDate.incrementAndGet();
+                        return;
+                    }
+                    ExportResult result = PlantUmlFacade.get().renderAndSave(job.source, sourceFile, formats, job.pathPrefix, zoom, -1);
+                    manifest.put(job.pathPrefix, inputHash, result);
+                    exported.incrementAndGet();
+                } catch (RenderingCancelledException | ProcessCanceledException ex) {
+                    LOG.debug(ex);
+                } catch (Throwable ex) {
+                    LOG.warn("export of " + job.pathPrefix + " failed", ex);
+                    errors.add(job.pathPrefix + ": " + ex);
+                } finally {
+                    indicator.setFraction((double) done.incrementAndGet() / jobs.size());
+                }
+            }));
+        }
+
+        try {
+            for (Future<?> future : futures) {
+                waitFor(future, indicator);
+            }
+        } catch (ProcessCanceledException ex) {
+            for (Future<?> future : futures) {
+                future.cancel(true);
+            }
+        } finally {
+            executor.shutdown();
+            manifest.save();
+            LOG.debug("exported ", exported.get(), " diagrams in ", System.currentTimeMillis() - start, "ms");
+            notifyDone(jobs.size(), exported.get(), upToDate.get(), errors, indicator.isCanceled());
+        }
+    }
+
+    private static void waitFor(Future<?> future, ProgressIndicator indicator) {
+        while (true) {
+            indicator.checkCanceled();
+            try {
+                future.get(100, TimeUnit.MILLISECONDS);
+                return;
+            } catch (TimeoutException e) {
+                //check the indicator again
+            } catch (InterruptedException e) {
+                throw new ProcessCanceledException(e);
+            } catch (ExecutionException e) {
+                LOG.error(e);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Everything besides the source and includes affecting the exported files.
+     */
+    private static String renderOptions(Collection<ImageFormat> formats) {
+        PlantUmlSettings settings = PlantUmlSettings.getInstance();
+        return formats
+                + "\n" + PlantUmlFacade.get().version()
+                + "\n" + settings.getEncoding()
+                + "\n" + settings.getConfig()
+                + "\n" + settings.getIncludedPaths()
+                + "\n" + settings.isUsePageTitles()
+                + "\n" + settings.getDotExecutable()
+                + "\n" + settings.isUsePreferentiallyGRAPHIZ_DOT()
+                + "\n" + settings.getPLANTUML_LIMIT_SIZE();
+    }
+
+    private static void notifyDone(int total, int exported, int upToDate, List<String> errors, boolean cancelled) {
+        StringBuilder message = new StringBuilder();
+        if (cancelled) {
+            message.append("Export cancelled, ").append(exported).append(" of ").append(total).append(" diagrams exported");
+        } else {
+            message.append(exported).append(" PlantUML diagrams exported");
+        }
+        if (upToDate > 0) {
+            message.append(", ").append(upToDate).append(" up to date");
+        }
+        if (!errors.isEmpty()) {
+            message.append(", ").append(errors.size()).append(" failed:");
+            synchronized (errors) {
+                for (String error : errors.subList(0, Math.min(errors.size(), MAX_REPORTED_ERRORS))) {
+                    message.append("<br>").append(error);
+                }
+            }
+            if (errors.size() > MAX_REPORTED_ERRORS) {
+                message.append("<br>...");
+            }
+        }
+        MessageType type = errors.isEmpty() ? MessageType.INFO : MessageType.WARNING;
+        Notifications.Bus.notify(notification().createNotification(message.toString(), type));
+    }
+
+    private static List<Job> collect(Project project, VirtualFile[] roots, ProgressIndicator indicator) {
+        ProjectFileIndex fileIndex = ProjectFileIndex.getInstance(project);
+        Set<VirtualFile> visited = new HashSet<>();
+        List<Job> jobs = new ArrayList<>();
+        for (VirtualFile root : roots) {
+            VfsUtilCore.iterateChildrenRecursively(root,
+                    file -> ReadAction.compute(() -> !fileIndex.isExcluded(file)),
+                    file -> {
+                        indicator.checkCanceled();
+                        if (!file.isDirectory() && visited.add(file)) {
+                            collect(file, jobs);
+                        }
+                        return true;
+                    });
+        }
+        return jobs;
+    }
+
+    static void collect(VirtualFile file, List<Job> jobs) {
+        if (file.getFileType().isBinary() || file.getParent() == null) {
+            return;
+        }
+        String text = ReadAction.compute(() -> {
+            Document document = FileDocumentManager.getInstance().getCachedDocument(file);
+            return document == null ? null : document.getText();
+        });
+        try {
+            if (text == null) {
+                text = VfsUtilCore.loadText(file);
+            }
+        } catch (IOException e) {
+            LOG.warn(e);
+            return;
+        }
+        if (!text.contains("@start")) {
+            return;
+        }
+        int index = 0;
+        for (String source : SourceExtractor.extractSources(text, true).values()) {
+            String pathPrefix = file.getParent().getPath() + "/" + file.getNameWithoutExtension();
+            if (index > 0) {
+                pathPrefix += String.format("_%03d", index);
+            }
+            jobs.add(new Job(file, source, pathPrefix));
+            index++;
+        }
+    }
+
+    @Override
+    public void update(@NotNull AnActionEvent e) {
+        VirtualFile[] files = e.getData(CommonDataKeys.VIRTUAL_FILE_ARRAY);
+        boolean enabled = e.getProject() != null && files != null && files.length > 0;
+        e.getPresentation().setEnabledAndVisible(enabled);
+        if (enabled && PlantUmlSettings.getInstance().isRemoteRendering()) {
+            e.getPresentation().setEnabled(false);
+        }
+    }
+
+    static class Job {
+        final VirtualFile file;
+        final String source;
+        final String pathPrefix;
+
+        Job(VirtualFile file, String source, String pathPrefix) {
+            this.file = file;
+            this.source = source;
+            this.pathPrefix = pathPrefix;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package org.plantuml.idea.action.save;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.DialogBuilder;
+import org.jetbrains.annotations.Nullable;
+import org.plantuml.idea.lang.settings.PlantUmlSettings;
+import org.plantuml.idea.plantuml.ImageFormat;
+
+import javax.swing.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Like {@link ExportAllDiagramsAction}, in the formats chosen in a dialog.
+ */
+public class ExportAllDiagramsInFormatsAction extends ExportAllDiagramsAction {
+
+    @Nullable
+    @Override
+    protected Collection<ImageFormat> chooseFormats(Project project) {
+        ImageFormat defaultFormat = PlantUmlSettings.getInstance().getDefaultExportFileFormatEnum();
+        JPanel panel = new JPanel();
+        panel.setLayout(new BoxLayout(panel, BoxLayout.Y_AXIS));
+        Map<ImageFormat, JCheckBox> checkBoxes = new EnumMap<>(ImageFormat.class);
+        for (ImageFormat format : ImageFormat.values()) {
+            JCheckBox checkBox = new JCheckBox(format.name().toLowerCase(), format == defaultFormat);
+            checkBoxes.put(format, checkBox);
+            panel.add(checkBox);
+        }
+
+        DialogBuilder builder = new DialogBuilder(project);
+        builder.setTitle("Export PlantUML Diagrams");
+        builder.setCenterPanel(panel);
+        if (!builder.showAndGet()) {
+            return null;
+        }
+        List<ImageFormat> formats = new ArrayList<>();
+        for (Map.Entry<ImageFormat, JCheckBox> entry : checkBoxes.entrySet()) {
+            if (entry.getValue().isSelected()) {
+                formats.add(entry.getKey());
+            }
+        }
+        return formats;
+    }
+}
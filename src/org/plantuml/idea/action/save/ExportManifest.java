@@ -0,0 +1,225 @@
+package org.plantuml.idea.action.save;
+
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VirtualFile;
+import org.jetbrains.annotations.NotNull;
+import org.plantuml.idea.rendering.ExportResult;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Inputs of exported diagrams, so that a repeated export skips the diagrams whose source, render options and
+ * included files did not change, and whose output files still exist.
+ * <p>
+ * Kept in the IDE system directory, keyed by the output path prefix. Included files are known only after
+ * rendering, so their hashes are recorded with the result and compared on the next export.
+ */
+public class ExportManifest {
+    private static final Logger LOG = Logger.getInstance(ExportManifest.class);
+    private static final int VERSION = 1;
+    private static final Object LOCK = new Object();
+
+    private final File file;
+    private final Map<String, Entry> entries;
+    private final Map<String, Entry> updated = new ConcurrentHashMap<>();
+    private final Map<File, String> contentHashes = new ConcurrentHashMap<>();
+
+    private ExportManifest(File file, Map<String, Entry> entries) {
+        this.file = file;
+        this.entries = entries;
+    }
+
+    @NotNull
+    public static ExportManifest load() {
+        File file = new File(PathManager.getSystemPath(), "plantuml/export-manifest.dat");
+        synchronized (LOCK) {
+            return new ExportManifest(file, read(file));
+        }
+    }
+
+    /**
+     * @param options everything besides the source and includes affecting the output
+     */
+    public static String inputHash(String source, File sourceFile, String options) {
+        return hash((options + "\n" + sourceFile.getAbsolutePath() + "\n" + source).getBytes(StandardCharsets.UTF_8));
+    }
+
+    public boolean isUpToDate(String pathPrefix, String inputHash) {
+        Entry entry = entries.get(pathPrefix);
+        if (entry == null || !entry.inputHash.equals(inputHash) || entry.outputFiles.isEmpty() || !entry.outputsExist()) {
+            return false;
+        }
+        for (Map.Entry<String, String> included : entry.includedFiles.entrySet()) {
+            if (!included.getValue().equals(contentHash(new File(included.getKey())))) {
+                LOG.debug("changed include ", included.getKey(), " of ", pathPrefix);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void put(String pathPrefix, String inputHash, ExportResult result) {
+        List<String> outputFiles = new ArrayList<>();
+        for (File outputFile : result.getOutputFiles()) {
+            outputFiles.add(outputFile.getAbsolutePath());
+        }
+        Map<String, String> includedFiles = new LinkedHashMap<>();
+        for (File includedFile : result.getIncludedFiles()) {
+            includedFiles.put(includedFile.getAbsolutePath(), contentHash(includedFile));
+        }
+        updated.put(pathPrefix, new Entry(inputHash, outputFiles, includedFiles));
+    }
+
+    /**
+     * Merges the updated entries into the current file, another export could have changed it meanwhile.
+     */
+    public void save() {
+        if (updated.isEmpty()) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        synchronized (LOCK) {
+            Map<String, Entry> merged = read(file);
+            merged.putAll(updated);
+            merged.values().removeIf(entry -> !entry.outputsExist());
+            write(file, merged);
+        }
+        LOG.debug("export manifest saved in ", System.currentTimeMillis() - start, "ms");
+    }
+
+    /**
+     * Unsaved documents are rendered with their current text, so it is hashed instead of the file.
+     */
+    private String contentHash(File file) {
+        return contentHashes.computeIfAbsent(file, f -> {
+            String text = ReadAction.compute(() -> {
+                VirtualFile virtualFile = LocalFileSystem.getInstance().findFileByIoFile(f);
+                FileDocumentManager documentManager = FileDocumentManager.getInstance();
+                Document document = virtualFile == null ? null : documentManager.getCachedDocument(virtualFile);
+                return document != null && documentManager.isDocumentUnsaved(document) ? document.getText() : null;
+            });
+            try {
+                if (text != null) {
+                    return hash(text.getBytes(StandardCharsets.UTF_8));
+                }
+                return f.isFile() ? hash(Files.readAllBytes(f.toPath())) : "missing";
+            } catch (IOException e) {
+                LOG.debug(e);
+                return "unreadable";
+            }
+        });
+    }
+
+    private static String hash(byte[] bytes) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+            StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @NotNull
+    private static Map<String, Entry> read(File file) {
+        Map<String, Entry> result = new ConcurrentHashMap<>();
+        if (!file.isFile()) {
+            return result;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != VERSION) {
+                return result;
+            }
+            int size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                String pathPrefix = in.readUTF();
+                result.put(pathPrefix, Entry.read(in));
+            }
+        } catch (IOException e) {
+            LOG.warn("unable to read " + file, e);
+            result.clear();
+        }
+        return result;
+    }
+
+    private static void write(File file, Map<String, Entry> entries) {
+        File parent = file.getParentFile();
+        if (!parent.exists() && !parent.mkdirs()) {
+            LOG.warn("unable to create " + parent);
+            return;
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                out.writeUTF(entry.getKey());
+                entry.getValue().write(out);
+            }
+        } catch (IOException e) {
+            LOG.warn("unable to write " + file, e);
+        }
+    }
+
+    private static class Entry {
+        private final String inputHash;
+        private final List<String> outputFiles;
+        private final Map<String, String> includedFiles;
+
+        Entry(String inputHash, List<String> outputFiles, Map<String, String> includedFiles) {
+            this.inputHash = inputHash;
+            this.outputFiles = outputFiles;
+            this.includedFiles = includedFiles;
+        }
+
+        boolean outputsExist() {
+            for (String outputFile : outputFiles) {
+                if (!new File(outputFile).exists()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        static Entry read(DataInput in) throws IOException {
+            String inputHash = in.readUTF();
+            int outputs = in.readInt();
+            List<String> outputFiles = new ArrayList<>(outputs);
+            for (int i = 0; i < outputs; i++) {
+                outputFiles.add(in.readUTF());
+            }
+            int includes = in.readInt();
+            Map<String, String> includedFiles = new LinkedHashMap<>();
+            for (int i = 0; i < includes; i++) {
+                includedFiles.put(in.readUTF(), in.readUTF());
+            }
+            return new Entry(inputHash, outputFiles, includedFiles);
+        }
+
+        void write(DataOutput out) throws IOException {
+            out.writeUTF(inputHash);
+            out.writeInt(outputFiles.size());
+            for (String outputFile : outputFiles) {
+                out.writeUTF(outputFile);
+            }
+            out.writeInt(includedFiles.size());
+            for (Map.Entry<String, String> entry : includedFiles.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeUTF(entry.getValue());
+            }
+        }
+    }
+}
@@ -4,6 +4,7 @@ import com.intellij.openapi.vfs.VirtualFile;
 import org.jetbrains.annotations.Nullable;
 import org.plantuml.idea.lang.annotator.SourceAnnotation;
 import org.plantuml.idea.plantuml.ImageFormat;
+import org.plantuml.idea.rendering.ExportResult;
 import org.plantuml.idea.rendering.RenderCacheItem;
 import org.plantuml.idea.rendering.RenderRequest;
 import org.plantuml.idea.rendering.RenderResult;
@@ -22,7 +23,13 @@ public interface PlantUmlFacade {
     @Nullable
     Collection<SourceAnnotation> annotateSyntaxErrors(String source, VirtualFile virtualFile);
 
-    void renderAndSave(String source, File sourceFile, ImageFormat format, String path, String pathPrefix, Zoom zoom, int pageNumber)
+    ExportResult renderAndSave(String source, File sourceFile, ImageFormat format, String path, String pathPrefix, Zoom zoom, int pageNumber)
+            throws IOException;
+
+    /**
+     * Parses the source once and saves the page, or all pages for -1, in each of the formats.
+     */
+    ExportResult renderAndSave(String source, File sourceFile, Collection<ImageFormat> formats, String pathPrefix, Zoom zoom, int pageNumber)
             throws IOException;
 
     RenderResult render(RenderRequest renderRequest, RenderCacheItem cachedItem);
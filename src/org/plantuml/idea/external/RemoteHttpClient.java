@@ -0,0 +1,71 @@
+package org.plantuml.idea.external;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.util.net.HttpConfigurable;
+import com.intellij.util.net.IdeaWideProxySelector;
+import org.jetbrains.annotations.NotNull;
+import org.plantuml.idea.lang.settings.PlantUmlSettings;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * {@link HttpClient} shared by remote rendering requests, so that connections to the server are kept alive and
+ * reused - multiplexed over HTTP/2 when the server supports it.
+ * <p>
+ * Created lazily and rebuilt only when the server or the proxy settings change.
+ */
+public class RemoteHttpClient {
+    private static final Logger LOG = Logger.getInstance(RemoteHttpClient.class);
+
+    private static HttpClient client;
+    private static String clientKey;
+
+    @NotNull
+    public static synchronized HttpClient get() {
+        PlantUmlSettings settings = PlantUmlSettings.getInstance();
+        String key = key(settings);
+        if (client == null || !key.equals(clientKey)) {
+            LOG.debug("creating http client for ", key);
+            client = create(settings);
+            clientKey = key;
+        }
+        return client;
+    }
+
+    public static CompletableFuture<HttpResponse<byte[]>> sendAsync(HttpRequest request) {
+        return get().sendAsync(request, HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    private static HttpClient create(PlantUmlSettings settings) {
+        HttpClient.Builder builder = HttpClient
+                .newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NEVER); //it is slow, better if user fixes the url
+
+        if (settings.isUseProxy()) {
+            builder.proxy(new IdeaWideProxySelector(HttpConfigurable.getInstance()));
+        } else {
+            builder.proxy(HttpClient.Builder.NO_PROXY);
+        }
+        return builder.connectTimeout(Duration.of(5, ChronoUnit.SECONDS)).build();
+    }
+
+    private static String key(PlantUmlSettings settings) {
+        StringBuilder key = new StringBuilder(settings.getServerPrefix());
+        if (settings.isUseProxy()) {
+            HttpConfigurable proxy = HttpConfigurable.getInstance();
+            key.append(" proxy=").append(proxy.USE_HTTP_PROXY)
+                    .append(',').append(proxy.USE_PROXY_PAC)
+                    .append(',').append(proxy.PROXY_TYPE_IS_SOCKS)
+                    .append(',').append(proxy.PROXY_HOST)
+                    .append(':').append(proxy.PROXY_PORT)
+                    .append(',').append(proxy.PROXY_EXCEPTIONS);
+        }
+        return key.toString();
+    }
+}
@@ -1,16 +1,16 @@
 package org.plantuml.idea.external;
 
 import com.intellij.openapi.diagnostic.Logger;
-import com.intellij.util.net.HttpConfigurable;
-import com.intellij.util.net.IdeaWideProxySelector;
+import com.intellij.util.ThrowableConvertor;
 import org.apache.commons.httpclient.HttpStatus;
+import org.jetbrains.annotations.Nullable;
 import org.plantuml.idea.lang.settings.PlantUmlSettings;
 import org.plantuml.idea.plantuml.ImageFormat;
-import org.plantuml.idea.rendering.ImageItem;
-import org.plantuml.idea.rendering.RenderRequest;
-import org.plantuml.idea.rendering.RenderResult;
-import org.plantuml.idea.rendering.RenderingType;
+import org.plantuml.idea.plantuml.SourceExtractor;
+import org.plantuml.idea.rendering.*;
 
+import java.io.File;
+import java.io.IOException;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpHeaders;
@@ -18,78 +18,286 @@ import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.time.Duration;
 import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
+/**
+ * Renders by the PlantUML server. Pages are split by {@code newpage} like in the local rendering, requested by
+ * the page index url form concurrently over the shared {@link RemoteHttpClient}, unchanged pages are taken from the
+ * cached item. Responses are cached in {@link RemoteResponseCache}, requests fail over between {@link RemoteServers}.
+ * <p>
+ * The {@link SharedRenderServer} of another IDE process is used the same way, in the requested format, with the
+ * source file and zoom sent in headers and without caching responses, since they depend on the included files. The
+ * result has its own {@link RenderingType#SHARED}, the included files listed by the server and page titles and file
+ * names from its headers.
+ */
 public class RemoteRenderer {
     private static final Logger LOG = Logger.getInstance(RemoteRenderer.class);
     private static final Logger BODY_LOG = Logger.getInstance("#org.plantuml.idea.external.RemoteRenderer.body");
 
-    public static RenderResult render(RenderRequest renderRequest) {
-        long start = System.currentTimeMillis();
-        PlantUmlSettings plantUmlSettings = PlantUmlSettings.getInstance();
-        String source = renderRequest.getSource();
-        boolean displaySvg = plantUmlSettings.isDisplaySvg();
-        try {
+    private static final Map<String, InFlight> IN_FLIGHT = new HashMap<>();
+    private static final ThrowableConvertor<String, String, IOException> ENCODER = source -> PlantUmlFacade.get().encode(source);
 
-            String encoded = PlantUmlFacade.get().encode(source);
-            String type = displaySvg ? "/svg/" : "/png/";
-            String url = plantUmlSettings.getServerPrefix() + type + encoded;
-            LOG.debug("url: ", url);
+    /**
+     * Cancels the requests of an older render of the file, unless it renders the same source. Called when a newer
+     * render command is scheduled, so that a superseded render does not wait for the server.
+     */
+    public static void cancelStale(String sourceFilePath, String source, int version) {
+        InFlight stale;
+        synchronized (IN_FLIGHT) {
+            stale = IN_FLIGHT.get(sourceFilePath);
+            if (stale == null || stale.version >= version || stale.source.equals(source)) {
+                return;
+            }
+            IN_FLIGHT.remove(sourceFilePath);
+        }
+        LOG.debug("cancelling remote render ", stale.version, " superseded by ", version);
+        stale.cancel();
+    }
 
-            HttpRequest build = HttpRequest.newBuilder()
-                    .uri(new URI(url))
-                    .GET()
-                    .timeout(Duration.of(30, ChronoUnit.SECONDS))
-                    .build();
+    static boolean isInFlight(String sourceFilePath) {
+        synchronized (IN_FLIGHT) {
+            return IN_FLIGHT.containsKey(sourceFilePath);
+        }
+    }
 
-            HttpClient.Builder builder = HttpClient
-                    .newBuilder()
-                    .followRedirects(HttpClient.Redirect.NEVER); //it is slow, better if user fixes the url
+    public static RenderResult render(RenderRequest renderRequest, @Nullable RenderCacheItem cachedItem) {
+        ImageFormat format = PlantUmlSettings.getInstance().isDisplaySvg() ? ImageFormat.SVG : ImageFormat.PNG;
+        return render(renderRequest, cachedItem, RemoteServers.get(), RemoteHttpClient.get(), false, format, renderRequest.getSource(), Collections.emptySet(), ENCODER);
+    }
 
-            if (plantUmlSettings.isUseProxy()) {
-                builder.proxy(new IdeaWideProxySelector(HttpConfigurable.getInstance()));
-            } else {
-                builder.proxy(HttpClient.Builder.NO_PROXY);
-            }
-            HttpClient client = builder.connectTimeout(Duration.of(5, ChronoUnit.SECONDS)).build();
+    /**
+     * @param sentSource   the source with includes of unsaved documents inlined
+     * @param inlinedFiles files inlined into the sent source
+     */
+    public static RenderResult renderShared(RenderRequest renderRequest, @Nullable RenderCacheItem cachedItem, RemoteServers sharedServer, String sentSource, Collection<File> inlinedFiles) {
+        return renderShared(renderRequest, cachedItem, sharedServer, sentSource, inlinedFiles, ENCODER);
+    }
 
-            HttpResponse.BodyHandler<byte[]> bodyHandler = HttpResponse.BodyHandlers.ofByteArray();
-            HttpResponse<byte[]> response = client.send(build, bodyHandler);
-            byte[] out = response.body();
-            LOG.debug("", response);
-            if (BODY_LOG.isDebugEnabled()) {
-                BODY_LOG.debug("body: ", new String(out));
+    static RenderResult renderShared(RenderRequest renderRequest, @Nullable RenderCacheItem cachedItem, RemoteServers sharedServer, String sentSource, Collection<File> inlinedFiles,
+                                     ThrowableConvertor<String, String, IOException> encoder) {
+        return render(renderRequest, cachedItem, sharedServer, SharedRenderServer.client(), true, renderRequest.getFormat(), sentSource, inlinedFiles, encoder);
+    }
+
+    private static RenderResult render(RenderRequest renderRequest, @Nullable RenderCacheItem cachedItem, RemoteServers servers, HttpClient client, boolean shared,
+                                       ImageFormat format, String sentSource, Collection<File> inlinedFiles, ThrowableConvertor<String, String, IOException> encoder) {
+        long start = System.currentTimeMillis();
+        String source = renderRequest.getSource();
+        RenderingType type = shared ? RenderingType.SHARED : RenderingType.REMOTE;
+        String[] sourceSplit = SourceExtractor.NEW_PAGE_PATTERN.split(source);
+        int totalPages = sourceSplit.length;
+        List<CompletableFuture<ImageItem>> responses = new ArrayList<>(totalPages);
+        InFlight inFlight = new InFlight(renderRequest.getVersion() != null ? renderRequest.getVersion() : -1, source);
+        String sourceFilePath = renderRequest.getSourceFilePath();
+        if (renderRequest.getVersion() != null && sourceFilePath != null) {
+            synchronized (IN_FLIGHT) {
+                IN_FLIGHT.put(sourceFilePath, inFlight);
             }
+        }
+        try {
+            String encoded = encoder.convert(sentSource);
+            String typePath = format == ImageFormat.SVG ? "/svg/" : "/png/";
+            Map<File, Long> included = Collections.synchronizedMap(new LinkedHashMap<>());
 
-            int statusCode = response.statusCode();
-            HttpHeaders headers = response.headers();
+            int requestedPage = renderRequest.getPage() < totalPages ? renderRequest.getPage() : -1;
+            boolean incremental = cachedItem != null
+                    && cachedItem.getRenderResult().getStrategy() == type
+                    && cachedItem.getImageItems().length == totalPages
+                    && !renderRequest.requestedRefreshOrIncludesChanged()
+                    && !(shared && cachedItem.zoomChanged(renderRequest));
 
-            RuntimeException runtimeException = null;
-            if (out.length == 0) {
-                URI uri = response.uri();
-                String statusText = HttpStatus.getStatusText(statusCode);
-                runtimeException = new RuntimeException(statusCode + ": " + statusText + "; uri=" + uri + "\nresponseHeaders=" + headers + "\nResponse Body was empty, check the configured url or proxy, redirects are prohibited for performance reasons.");
-            }
-            byte[] bytes;
-            byte[] svgBytes;
-            if (displaySvg) {
-                bytes = out;
-                svgBytes = bytes;
-            } else {
-                bytes = out;
-                svgBytes = null;
+            boolean anyCached = false;
+            ImageItem[] cached = new ImageItem[totalPages];
+            for (int page = 0; page < totalPages; page++) {
+                if (incremental && !cachedItem.sourceChanged(sourceSplit, page)) {
+                    ImageItem imageItem = cachedItem.getImageItem(page);
+                    if (imageItem != null && imageItem.getFormat() == format && imageItem.hasImageBytes()) {
+                        cached[page] = imageItem;
+                        anyCached = true;
+                    }
+                }
+                CompletableFuture<ImageItem> response = null;
+                if (cached[page] == null && (requestedPage == -1 || requestedPage == page)) {
+                    String path = typePath + (totalPages > 1 ? page + "/" : "") + encoded;
+                    response = fetch(renderRequest, format, type, sourceSplit[page], page, servers, client, path, inFlight, included);
+                }
+                responses.add(response);
             }
-            String description = statusCode >= 400 || runtimeException != null ? ImageItem.ERROR : "OK";
 
-            RenderResult renderResult = new RenderResult(RenderingType.REMOTE, 1);
-            renderResult.addRenderedImage(new ImageItem(renderRequest.getBaseDir(), displaySvg ? ImageFormat.SVG : ImageFormat.PNG, source, source, 0, description, bytes, svgBytes, RenderingType.REMOTE, null, null, runtimeException));
+            RenderResult renderResult = new RenderResult(type, totalPages);
+            for (int page = 0; page < totalPages; page++) {
+                CompletableFuture<ImageItem> response = responses.get(page);
+                if (cached[page] != null) {
+                    LOG.debug("page ", page, " cached");
+                    renderResult.addCachedImage(cached[page]);
+                } else if (response != null) {
+                    renderResult.addRenderedImage(get(renderRequest, format, type, sourceSplit[page], page, response));
+                } else {
+                    renderResult.addUpdatedTitle(new ImageItem(renderRequest.getBaseDir(), format, source, sourceSplit[page], page, RenderResult.TITLE_ONLY, null, null, type, null, null, null));
+                }
+            }
+            if (shared) {
+                LinkedHashMap<File, Long> includedFiles = new LinkedHashMap<>();
+                if (anyCached) {
+                    includedFiles.putAll(cachedItem.getRenderResult().getIncludedFiles());
+                }
+                synchronized (included) {
+                    includedFiles.putAll(included);
+                }
+                for (File file : inlinedFiles) {
+                    includedFiles.put(file, file.lastModified());
+                }
+                renderResult.setIncludedFiles(includedFiles);
+            }
             return renderResult;
+        } catch (RenderingCancelledException e) {
+            throw e;
         } catch (Throwable e) {
             LOG.warn(e);
-            RenderResult renderResult = new RenderResult(RenderingType.REMOTE, 1);
-            renderResult.addRenderedImage(new ImageItem(renderRequest.getBaseDir(), displaySvg ? ImageFormat.SVG : ImageFormat.PNG, source, source, 0, ImageItem.ERROR, null, null, RenderingType.REMOTE, null, null, e));
+            if (shared) {
+                SharedRenderServer.forget();
+            }
+            RenderResult renderResult = new RenderResult(type, 1);
+            renderResult.addRenderedImage(new ImageItem(renderRequest.getBaseDir(), format, source, source, 0, ImageItem.ERROR, null, null, type, null, null, e));
             return renderResult;
         } finally {
+            inFlight.cancel();
+            if (sourceFilePath != null) {
+                synchronized (IN_FLIGHT) {
+                    IN_FLIGHT.remove(sourceFilePath, inFlight);
+                }
+            }
             LOG.debug("render done in ", System.currentTimeMillis() - start, "ms");
         }
     }
+
+    /**
+     * A fresh cached response is used without a request, a stale one is revalidated, unless a refresh was requested.
+     * Responses are cached by the path and the configured servers, any of them renders the same. Responses of the shared server are not
+     * cached, they depend on the included files, which are collected from the response headers.
+     */
+    private static CompletableFuture<ImageItem> fetch(RenderRequest renderRequest, ImageFormat format, RenderingType type, String pageSource, int page, RemoteServers servers, HttpClient client, String path, InFlight inFlight, Map<File, Long> included) {
+        boolean shared = type == RenderingType.SHARED;
+        RemoteResponseCache cache = shared ? null : RemoteResponseCache.getInstance();
+        String cacheKey = servers.cacheKey(path);
+        RemoteResponseCache.Entry cached = shared ? null : cache.get(cacheKey);
+        if (cached != null && cached.isFresh() && !renderRequest.requestedRefreshOrIncludesChanged()) {
+            LOG.debug("cached response for page ", page);
+            return CompletableFuture.completedFuture(imageItem(renderRequest, format, type, pageSource, page, cached, null));
+        }
+        CompletableFuture<HttpResponse<byte[]>> request = servers.send(client, prefix -> {
+            String url = prefix + path;
+            LOG.debug("url: ", url);
+            HttpRequest.Builder builder = HttpRequest.newBuilder()
+                    .uri(URI.create(url))
+                    .GET()
+                    .timeout(Duration.of(30, ChronoUnit.SECONDS));
+            if (cached != null && cached.getEtag() != null) {
+                builder.header("If-None-Match", cached.getEtag());
+            }
+            if (cached != null && cached.getLastModified() != null) {
+                builder.header("If-Modified-Since", cached.getLastModified());
+            }
+            if (shared) {
+                if (renderRequest.getSourceFilePath() != null) {
+                    builder.header(SharedRenderServer.HEADER_SOURCE_FILE, renderRequest.getSourceFilePath());
+                }
+                builder.header(SharedRenderServer.HEADER_ZOOM, String.valueOf(renderRequest.getZoom().getUnscaledZoom()));
+            }
+            return builder.build();
+        });
+        inFlight.add(request);
+        return request.thenApply(response -> {
+            LOG.debug("", response);
+            RemoteResponseCache.Entry entry;
+            if (shared) {
+                included.putAll(SharedRenderServer.parseIncluded(response.headers().allValues(SharedRenderServer.HEADER_INCLUDED)));
+                entry = RemoteResponseCache.Entry.of(response);
+            } else if (response.statusCode() == 304 && cached != null) {
+                entry = cache.revalidated(cacheKey, cached, response);
+            } else {
+                entry = cache.put(cacheKey, response);
+            }
+            return imageItem(renderRequest, format, type, pageSource, page, entry, response);
+        });
+    }
+
+    private static ImageItem get(RenderRequest renderRequest, ImageFormat format, RenderingType type, String pageSource, int page, CompletableFuture<ImageItem> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException | CancellationException e) {
+            throw new RenderingCancelledException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof CancellationException) {
+                throw new RenderingCancelledException(e);
+            }
+            LOG.warn(e.getCause());
+            return new ImageItem(renderRequest.getBaseDir(), format, renderRequest.getSource(), pageSource, page, ImageItem.ERROR, null, null, type, null, null, e.getCause());
+        }
+    }
+
+    private static ImageItem imageItem(RenderRequest renderRequest, ImageFormat format, RenderingType type, String pageSource, int page, RemoteResponseCache.Entry entry, @Nullable HttpResponse<byte[]> response) {
+        byte[] out = entry.getBody();
+        if (BODY_LOG.isDebugEnabled()) {
+            BODY_LOG.debug("body: ", new String(out));
+        }
+
+        int statusCode = entry.getStatusCode();
+
+        RuntimeException runtimeException = null;
+        if (out.length == 0) {
+            URI uri = response != null ? response.uri() : null;
+            HttpHeaders headers = response != null ? response.headers() : null;
+            String statusText = HttpStatus.getStatusText(statusCode);
+            runtimeException = new RuntimeException(statusCode + ": " + statusText + "; uri=" + uri + "\nresponseHeaders=" + headers + "\nResponse Body was empty, check the configured url or proxy, redirects are prohibited for performance reasons.");
+        }
+        byte[] svgBytes = format == ImageFormat.SVG ? out : null;
+        String description = statusCode >= 400 || runtimeException != null ? ImageItem.ERROR : "OK";
+        String title = null;
+        String fileName = null;
+        if (type == RenderingType.SHARED && response != null) {
+            title = SharedRenderServer.decodeHeader(response.headers().firstValue(SharedRenderServer.HEADER_TITLE).orElse(null));
+            fileName = SharedRenderServer.decodeHeader(response.headers().firstValue(SharedRenderServer.HEADER_FILENAME).orElse(null));
+        }
+        return new ImageItem(renderRequest.getBaseDir(), format, renderRequest.getSource(), pageSource, page, description, out, svgBytes, type, title, fileName, runtimeException);
+    }
+
+    /**
+     * Requests of a render, cancelled when it is superseded or done.
+     */
+    private static class InFlight {
+        private final int version;
+        private final String source;
+        private final List<CompletableFuture<?>> requests = new ArrayList<>();
+        private boolean cancelled;
+
+        InFlight(int version, String source) {
+            this.version = version;
+            this.source = source;
+        }
+
+        void add(CompletableFuture<?> request) {
+            synchronized (this) {
+                if (!cancelled) {
+                    requests.add(request);
+                    return;
+                }
+            }
+            request.cancel(true);
+        }
+
+        void cancel() {
+            List<CompletableFuture<?>> toCancel;
+            synchronized (this) {
+                cancelled = true;
+                toCancel = new ArrayList<>(requests);
+                requests.clear();
+            }
+            for (CompletableFuture<?> request : toCancel) {
+                request.cancel(true);
+            }
+        }
+    }
 }
@@ -0,0 +1,361 @@
+package org.plantuml.idea.external;
+
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Successful responses of the PlantUML servers by {@link RemoteServers#cacheKey}, in memory and in the IDE system directory, both evicting the
+ * least recently used.
+ * <p>
+ * The url path encodes the whole source, so a fresh entry is used without asking the server. Stale entries are
+ * revalidated by a conditional request when the server sent an ETag or Last-Modified header. Without caching
+ * headers an entry is considered fresh for {@link #DEFAULT_FRESHNESS}. Responses with {@code no-store} are not
+ * cached, {@code no-cache} ones are cached and revalidated before each use.
+ * <p>
+ * Entries are written to disk by a background executor, not on the thread completing the response. The size of the
+ * directory is tracked in memory, it is listed only to evict files once the limit is exceeded.
+ */
+public class RemoteResponseCache {
+    private static final Logger LOG = Logger.getInstance(RemoteResponseCache.class);
+    private static final int VERSION = 2;
+    private static final long MAX_MEMORY_BYTES = 16 * 1024 * 1024;
+    private static final long MAX_DISK_BYTES = 64 * 1024 * 1024;
+    private static final long DEFAULT_FRESHNESS = TimeUnit.DAYS.toMillis(1);
+    private static final Pattern MAX_AGE = Pattern.compile("max-age=(\\d+)");
+
+    private final File dir;
+    private final long maxMemoryBytes;
+    private final long maxDiskBytes;
+    private final Executor diskExecutor;
+    private final LinkedHashMap<String, Entry> memory = new LinkedHashMap<>(16, 0.75f, true);
+    private long memoryBytes;
+    /**
+     * -1 until the directory is listed by the first write
+     */
+    private long diskBytes = -1;
+
+    RemoteResponseCache(File dir, long maxMemoryBytes, long maxDiskBytes, Executor diskExecutor) {
+        this.dir = dir;
+        this.maxMemoryBytes = maxMemoryBytes;
+        this.maxDiskBytes = maxDiskBytes;
+        this.diskExecutor = diskExecutor;
+    }
+
+    public static RemoteResponseCache getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    private static class Holder {
+        private static final RemoteResponseCache INSTANCE = new RemoteResponseCache(new File(PathManager.getSystemPath(), "plantuml/remote-cache"),
+                MAX_MEMORY_BYTES, MAX_DISK_BYTES, AppExecutorUtil.createBoundedApplicationPoolExecutor("PlantUML remote cache", 1));
+    }
+
+    @Nullable
+    public Entry get(String path) {
+        synchronized (memory) {
+            Entry entry = memory.get(path);
+            if (entry != null) {
+                return entry;
+            }
+        }
+        Entry entry = read(file(path), path);
+        if (entry != null) {
+            remember(path, entry);
+        }
+        return entry;
+    }
+
+    /**
+     * Caches a successful response, other responses and {@code no-store} ones are returned as they are.
+     */
+    @NotNull
+    public Entry put(String path, HttpResponse<byte[]> response) {
+        Entry entry = Entry.of(response);
+        if (entry.statusCode == 200 && entry.body.length > 0 && !isNoStore(response.headers())) {
+            remember(path, entry);
+            diskExecutor.execute(() -> write(path, entry));
+        }
+        return entry;
+    }
+
+    /**
+     * Extends the entry after a {@code 304 Not Modified} response, or drops it when the response forbids storing.
+     */
+    @NotNull
+    public Entry revalidated(String path, Entry entry, HttpResponse<byte[]> response) {
+        String etag = validator(response.headers(), "ETag");
+        String lastModified = validator(response.headers(), "Last-Modified");
+        Entry updated = new Entry(entry.statusCode, entry.body, etag != null ? etag : entry.etag,
+                lastModified != null ? lastModified : entry.lastModified, freshUntil(response.headers()));
+        if (isNoStore(response.headers())) {
+            forget(path);
+            return updated;
+        }
+        remember(path, updated);
+        diskExecutor.execute(() -> write(path, updated));
+        return updated;
+    }
+
+    private void remember(String path, Entry entry) {
+        synchronized (memory) {
+            Entry previous = memory.put(path, entry);
+            if (previous != null) {
+                memoryBytes -= previous.body.length;
+            }
+            memoryBytes += entry.body.length;
+            Iterator<Entry> iterator = memory.values().iterator();
+            while (memoryBytes > maxMemoryBytes && iterator.hasNext()) {
+                memoryBytes -= iterator.next().body.length;
+                iterator.remove();
+            }
+        }
+    }
+
+    private void forget(String path) {
+        synchronized (memory) {
+            Entry previous = memory.remove(path);
+            if (previous != null) {
+                memoryBytes -= previous.body.length;
+            }
+        }
+        diskExecutor.execute(() -> delete(path));
+    }
+
+    @Nullable
+    private static String validator(HttpHeaders headers, String name) {
+        return headers.firstValue(name).orElse(null);
+    }
+
+    private static boolean isNoStore(HttpHeaders headers) {
+        return headers.firstValue("Cache-Control").map(value -> value.contains("no-store")).orElse(false);
+    }
+
+    private static long freshUntil(HttpHeaders headers) {
+        long now = System.currentTimeMillis();
+        Optional<String> cacheControl = headers.firstValue("Cache-Control");
+        if (cacheControl.isPresent()) {
+            if (cacheControl.get().contains("no-cache") || cacheControl.get().contains("no-store")) {
+                return now;
+            }
+            Matcher matcher = MAX_AGE.matcher(cacheControl.get());
+            if (matcher.find()) {
+                return now + TimeUnit.SECONDS.toMillis(Long.parseLong(matcher.group(1)));
+            }
+        }
+        Optional<String> expires = headers.firstValue("Expires");
+        if (expires.isPresent()) {
+            try {
+                return ZonedDateTime.parse(expires.get(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+            } catch (DateTimeParseException e) {
+                return now;
+            }
+        }
+        return now + DEFAULT_FRESHNESS;
+    }
+
+    File file(String path) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(path.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return new File(dir, sb.toString());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Nullable
+    private static Entry read(File file, String path) {
+        if (!file.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != VERSION || !path.equals(readString(in))) {
+                return null;
+            }
+            String etag = in.readBoolean() ? in.readUTF() : null;
+            String lastModified = in.readBoolean() ? in.readUTF() : null;
+            long freshUntil = in.readLong();
+            byte[] body = new byte[in.readInt()];
+            in.readFully(body);
+            //least recently used are evicted
+            file.setLastModified(System.currentTimeMillis());
+            return new Entry(200, body, etag, lastModified, freshUntil);
+        } catch (IOException e) {
+            LOG.debug("unable to read ", file, e);
+            return null;
+        }
+    }
+
+    private void write(String path, Entry entry) {
+        synchronized (dir) {
+            if (!dir.exists() && !dir.mkdirs()) {
+                LOG.warn("unable to create " + dir);
+                return;
+            }
+            File file = file(path);
+            if (diskBytes < 0) {
+                diskBytes = size(dir.listFiles());
+            }
+            diskBytes -= file.length();
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+                out.writeInt(VERSION);
+                writeString(out, path);
+                writeNullable(out, entry.etag);
+                writeNullable(out, entry.lastModified);
+                out.writeLong(entry.freshUntil);
+                out.writeInt(entry.body.length);
+                out.write(entry.body);
+            } catch (IOException e) {
+                LOG.warn("unable to write " + file, e);
+                if (!file.delete()) {
+                    LOG.debug("unable to delete ", file);
+                }
+                return;
+            } finally {
+                diskBytes += file.length();
+            }
+            if (diskBytes > maxDiskBytes) {
+                evict();
+            }
+        }
+    }
+
+    private void delete(String path) {
+        synchronized (dir) {
+            File file = file(path);
+            long length = file.length();
+            if (file.delete()) {
+                if (diskBytes >= 0) {
+                    diskBytes -= length;
+                }
+            } else if (file.exists()) {
+                LOG.debug("unable to delete ", file);
+            }
+        }
+    }
+
+    /**
+     * Paths can be longer than {@link DataOutput#writeUTF} allows.
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeNullable(DataOutputStream out, @Nullable String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private void evict() {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        long size = size(files);
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (File file : files) {
+            if (size <= maxDiskBytes) {
+                break;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                size -= length;
+            } else {
+                LOG.debug("unable to delete ", file);
+            }
+        }
+        diskBytes = size;
+    }
+
+    private static long size(@Nullable File[] files) {
+        long size = 0;
+        if (files != null) {
+            for (File file : files) {
+                size += file.length();
+            }
+        }
+        return size;
+    }
+
+    public static class Entry {
+        private final int statusCode;
+        @NotNull
+        private final byte[] body;
+        @Nullable
+        private final String etag;
+        @Nullable
+        private final String lastModified;
+        private final long freshUntil;
+
+        Entry(int statusCode, @NotNull byte[] body, @Nullable String etag, @Nullable String lastModified, long freshUntil) {
+            this.statusCode = statusCode;
+            this.body = body;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.freshUntil = freshUntil;
+        }
+
+        /**
+         * @return the response as an entry, not cached
+         */
+        @NotNull
+        public static Entry of(HttpResponse<byte[]> response) {
+            return new Entry(response.statusCode(), response.body(), validator(response.headers(), "ETag"),
+                    validator(response.headers(), "Last-Modified"), freshUntil(response.headers()));
+        }
+
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        @NotNull
+        public byte[] getBody() {
+            return body;
+        }
+
+        @Nullable
+        public String getEtag() {
+            return etag;
+        }
+
+        @Nullable
+        public String getLastModified() {
+            return lastModified;
+        }
+
+        public boolean isFresh() {
+            return System.currentTimeMillis() < freshUntil;
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package org.plantuml.idea.external;
+
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.plantuml.idea.lang.settings.PlantUmlSettings;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * PlantUML servers of the remote rendering, with their latency and health tracked by the outcome of requests.
+ * <p>
+ * A request goes to the fastest healthy server and fails over to the next one on an error or a 5xx response.
+ * A failed server is skipped until a backoff passes, doubling with each consecutive failure. When the first server
+ * does not answer within the hedge delay, the request is sent to the next server too and the first good
+ * response wins.
+ */
+public class RemoteServers {
+    private static final Logger LOG = Logger.getInstance(RemoteServers.class);
+    public static final long HEDGE_AFTER_MILLIS = 3000;
+    private static final long MIN_BACKOFF_MILLIS = 5_000;
+    private static final long MAX_BACKOFF_MILLIS = 5 * 60_000;
+
+    private static RemoteServers instance;
+
+    private final Map<String, Server> servers = new LinkedHashMap<>();
+    private final long hedgeAfterMillis;
+
+    /**
+     * @param hedgeAfterMillis 0 for no hedging
+     */
+    public RemoteServers(List<String> prefixes, long hedgeAfterMillis) {
+        for (String prefix : prefixes) {
+            servers.put(prefix, new Server(prefix));
+        }
+        this.hedgeAfterMillis = hedgeAfterMillis;
+    }
+
+    /**
+     * @return servers of the current settings, keeping the statistics while they do not change
+     */
+    @NotNull
+    public static synchronized RemoteServers get() {
+        List<String> prefixes = PlantUmlSettings.getInstance().getServerPrefixes();
+        if (instance == null || !instance.servers.keySet().equals(new LinkedHashSet<>(prefixes))) {
+            instance = new RemoteServers(prefixes, HEDGE_AFTER_MILLIS);
+        }
+        return instance;
+    }
+
+    /**
+     * @return key of a response cached for the path, the servers may render differently so responses of other
+     * servers are not reused
+     */
+    public String cacheKey(String path) {
+        return String.join(" ", new TreeSet<>(servers.keySet())) + " " + path;
+    }
+
+    /**
+     * Healthy servers by latency, servers not used yet first, then the failed ones by the end of their backoff.
+     */
+    public synchronized List<String> ordered() {
+        long now = System.currentTimeMillis();
+        List<Server> list = new ArrayList<>(servers.values());
+        list.sort(Comparator.<Server>comparingInt(server -> server.isHealthy(now) ? 0 : 1)
+                .thenComparingLong(server -> server.isHealthy(now) ? server.latencyMillis : server.retryAt));
+        List<String> result = new ArrayList<>(list.size());
+        for (Server server : list) {
+            result.add(server.prefix);
+        }
+        return result;
+    }
+
+    /**
+     * @param request request to the given server prefix
+     */
+    public CompletableFuture<HttpResponse<byte[]>> send(HttpClient client, Function<String, HttpRequest> request) {
+        Attempts attempts = new Attempts(client, request, ordered());
+        attempts.next();
+        if (hedgeAfterMillis > 0 && servers.size() > 1) {
+            CompletableFuture.delayedExecutor(hedgeAfterMillis, TimeUnit.MILLISECONDS).execute(attempts::hedge);
+        }
+        return attempts.result;
+    }
+
+    synchronized void success(String prefix, long millis) {
+        Server server = servers.get(prefix);
+        if (server != null) {
+            server.latencyMillis = server.latencyMillis == 0 ? millis : (server.latencyMillis * 3 + millis) / 4;
+            server.failures = 0;
+            server.retryAt = 0;
+        }
+    }
+
+    synchronized void failure(String prefix) {
+        Server server = servers.get(prefix);
+        if (server != null) {
+            server.failures++;
+            long backoff = Math.min(MAX_BACKOFF_MILLIS, MIN_BACKOFF_MILLIS << Math.min(server.failures - 1, 16));
+            server.retryAt = System.currentTimeMillis() + backoff;
+            LOG.debug("server ", prefix, " failed ", server.failures, " times, skipped for ", backoff, "ms");
+        }
+    }
+
+    private static class Server {
+        private final String prefix;
+        private long latencyMillis;
+        private int failures;
+        private long retryAt;
+
+        Server(String prefix) {
+            this.prefix = prefix;
+        }
+
+        boolean isHealthy(long now) {
+            return retryAt <= now;
+        }
+    }
+
+    private class Attempts {
+        private final HttpClient client;
+        private final Function<String, HttpRequest> request;
+        private final List<String> order;
+        private final CompletableFuture<HttpResponse<byte[]>> result = new CompletableFuture<>();
+        private final List<CompletableFuture<HttpResponse<byte[]>>> inFlight = new ArrayList<>();
+        private int next;
+        private int pending;
+        private HttpResponse<byte[]> lastResponse;
+        private Throwable lastError;
+
+        Attempts(HttpClient client, Function<String, HttpRequest> request, List<String> order) {
+            this.client = client;
+            this.request = request;
+            this.order = order;
+            result.whenComplete((response, throwable) -> cancelInFlight());
+        }
+
+        synchronized void hedge() {
+            if (!result.isDone() && pending > 0) {
+                LOG.debug("hedging to the next server");
+                next();
+            }
+        }
+
+        synchronized void next() {
+            if (result.isDone()) {
+                return;
+            }
+            if (next >= order.size()) {
+                if (pending == 0) {
+                    if (lastResponse != null) {
+                        result.complete(lastResponse);
+                    } else {
+                        result.completeExceptionally(lastError != null ? lastError : new IOException("no server"));
+                    }
+                }
+                return;
+            }
+            String prefix = order.get(next++);
+            long start = System.currentTimeMillis();
+            CompletableFuture<HttpResponse<byte[]>> future;
+            try {
+                future = client.sendAsync(request.apply(prefix), HttpResponse.BodyHandlers.ofByteArray());
+            } catch (RuntimeException e) {
+                future = CompletableFuture.failedFuture(e);
+            }
+            pending++;
+            inFlight.add(future);
+            future.whenComplete((response, throwable) -> done(prefix, System.currentTimeMillis() - start, response, throwable));
+        }
+
+        private synchronized void done(String prefix, long millis, HttpResponse<byte[]> response, Throwable throwable) {
+            pending--;
+            if (throwable == null && response.statusCode() < 500) {
+                success(prefix, millis);
+                result.complete(response);
+                return;
+            }
+            if (result.isDone()) {
+                return;
+            }
+            failure(prefix);
+            if (throwable != null) {
+                LOG.debug("server ", prefix, " failed: ", throwable);
+                lastError = throwable;
+            } else {
+                LOG.debug("server ", prefix, " responded ", response.statusCode());
+                lastResponse = response;
+            }
+            next();
+        }
+
+        private synchronized void cancelInFlight() {
+            for (CompletableFuture<HttpResponse<byte[]>> future : inFlight) {
+                future.cancel(true);
+            }
+        }
+    }
+}
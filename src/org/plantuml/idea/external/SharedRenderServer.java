@@ -0,0 +1,306 @@
+package org.plantuml.idea.external;
+
+import com.intellij.ide.plugins.IdeaPluginDescriptor;
+import com.intellij.ide.plugins.PluginManagerCore;
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.plantuml.idea.lang.settings.PlantUmlSettings;
+
+import java.io.*;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * Discovery of the render server shared by IDE processes on this machine, see the setting "Shared render server".
+ * <p>
+ * The first process needing a render starts a server on localhost and publishes its port in a file in the user
+ * home, the other processes send their renders there instead of loading PlantUML and warming its caches themselves.
+ * Requests use the url form of the PlantUML server under a random token, so that other local programs cannot use it.
+ * When the hosting process exits, the next render of another process starts a new server.
+ * <p>
+ * The published file also holds the plugin and PlantUML versions and a hash of the settings affecting renders, see
+ * {@link #compatibility()}. A process with different ones renders by itself and leaves the server to the others.
+ * <p>
+ * The client inlines includes of its unsaved documents into the sent source, the host reads the other includes from
+ * disk and lists them in {@link #HEADER_INCLUDED} headers, so that the client re-renders when they change. Page title
+ * and file name are sent in headers too, PNG renders with url links stay local, the host does not render the SVG
+ * the links are read from.
+ */
+public class SharedRenderServer {
+    private static final Logger LOG = Logger.getInstance(SharedRenderServer.class);
+    public static final String HEADER_SOURCE_FILE = "X-PlantUML-Source-File";
+    public static final String HEADER_ZOOM = "X-PlantUML-Zoom";
+    /**
+     * {@code lastModified urlEncodedPath}, one header per included file
+     */
+    public static final String HEADER_INCLUDED = "X-PlantUML-Included";
+    /**
+     * title and file name of the page, url encoded
+     */
+    public static final String HEADER_TITLE = "X-PlantUML-Title";
+    public static final String HEADER_FILENAME = "X-PlantUML-Filename";
+    public static final String PING = "/ping";
+    private static final long CHECK_EVERY_MILLIS = 5_000;
+    private static final File FILE = new File(System.getProperty("user.home"), ".plantuml4idea/render-server");
+    private static final String PORT = "port";
+    private static final String TOKEN = "token";
+
+    private static final HttpClient CLIENT = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .proxy(HttpClient.Builder.NO_PROXY)
+            .connectTimeout(Duration.ofSeconds(1))
+            .build();
+
+    private static String hostedPrefix;
+    private static int hostedPort;
+    private static String hostedToken;
+    private static boolean incompatibleRunning;
+    private static String runningPrefix;
+    private static RemoteServers runningServers;
+    private static long checkedAt;
+
+    /**
+     * @return the server of another process, null when this process hosts it or there is none
+     */
+    @Nullable
+    public static synchronized RemoteServers findRunning() {
+        long now = System.currentTimeMillis();
+        if (now - checkedAt < CHECK_EVERY_MILLIS) {
+            return runningServers;
+        }
+        checkedAt = now;
+        Properties published = read();
+        String prefix = published == null ? null : prefix(published);
+        incompatibleRunning = false;
+        if (prefix == null || prefix.equals(hostedPrefix) || !ping(prefix)) {
+            runningPrefix = null;
+            runningServers = null;
+        } else if (!isCompatible(published)) {
+            incompatibleRunning = true;
+            runningPrefix = null;
+            runningServers = null;
+        } else if (!prefix.equals(runningPrefix)) {
+            LOG.debug("using shared render server ", prefix);
+            runningPrefix = prefix;
+            runningServers = new RemoteServers(Collections.singletonList(prefix), 0);
+        }
+        return runningServers;
+    }
+
+    /**
+     * @return false when the server of another process renders with other versions or settings, it stays published
+     * for the processes it serves and this process renders by itself
+     */
+    public static synchronized boolean mayHost() {
+        return !incompatibleRunning;
+    }
+
+    /**
+     * Forgets the server of another process, so that the next render checks again.
+     */
+    public static synchronized void forget() {
+        checkedAt = 0;
+    }
+
+    /**
+     * Publishes the hosted server again with the changed settings, and checks the server of another process again.
+     */
+    public static synchronized void settingsChanged() {
+        forget();
+        if (hostedPrefix == null) {
+            return;
+        }
+        Properties published = read();
+        if (published == null || !hostedPrefix.equals(prefix(published))) {
+            return;
+        }
+        try {
+            publish(hostedPort, hostedToken);
+        } catch (IOException e) {
+            LOG.warn("unable to publish shared render server", e);
+        }
+    }
+
+    /**
+     * Plugin and PlantUML versions and a hash of the settings affecting renders, the server of another process is
+     * used only when they are the same. The plugin version covers the request and header format.
+     */
+    @NotNull
+    static Map<String, String> compatibility() {
+        PlantUmlSettings settings = PlantUmlSettings.getInstance();
+        Map<String, String> result = new LinkedHashMap<>();
+        result.put("plugin", pluginVersion());
+        result.put("plantuml", PlantUmlFacade.get().version());
+        result.put("settings", String.valueOf(Objects.hash(settings.isUseBundled(), settings.getCustomPlantumlJarPath(),
+                settings.getConfig(), settings.getIncludedPaths(), settings.getEncoding(), settings.getPLANTUML_LIMIT_SIZE(),
+                settings.getDotExecutable(), settings.isUsePreferentiallyGRAPHIZ_DOT(), System.getProperty("GRAPHVIZ_DOT"), System.getenv("GRAPHVIZ_DOT"))));
+        return result;
+    }
+
+    @NotNull
+    private static String pluginVersion() {
+        IdeaPluginDescriptor plugin = PluginManagerCore.getPlugin(PluginManagerCore.getPluginByClassName(SharedRenderServer.class.getName()));
+        return plugin == null || plugin.getVersion() == null ? "" : plugin.getVersion();
+    }
+
+    private static boolean isCompatible(Properties published) {
+        for (Map.Entry<String, String> entry : compatibility().entrySet()) {
+            if (!entry.getValue().equals(published.getProperty(entry.getKey()))) {
+                LOG.debug("shared render server has other ", entry.getKey(), ": ", published.getProperty(entry.getKey()), ", rendering locally");
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @NotNull
+    public static HttpClient client() {
+        return CLIENT;
+    }
+
+    @NotNull
+    public static String newToken() {
+        byte[] bytes = new byte[16];
+        new SecureRandom().nextBytes(bytes);
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Makes the server of this process the shared one.
+     */
+    public static synchronized void publish(int port, String token) throws IOException {
+        String prefix = prefix(port, token);
+        File dir = FILE.getParentFile();
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("unable to create " + dir);
+        }
+        File tmp = File.createTempFile("render-server", ".tmp", dir);
+        //only the user may read the token
+        tmp.setReadable(false, false);
+        tmp.setReadable(true, true);
+        tmp.setWritable(false, false);
+        tmp.setWritable(true, true);
+        Properties properties = new Properties();
+        properties.setProperty(PORT, String.valueOf(port));
+        properties.setProperty(TOKEN, token);
+        properties.putAll(compatibility());
+        try (OutputStream out = Files.newOutputStream(tmp.toPath())) {
+            properties.store(out, null);
+        }
+        Files.move(tmp.toPath(), FILE.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        hostedPrefix = prefix;
+        hostedPort = port;
+        hostedToken = token;
+        LOG.info("shared render server published on port " + port);
+    }
+
+    /**
+     * Removes the published server, unless another process replaced it already.
+     */
+    public static synchronized void unpublish(int port, String token) {
+        Properties published = read();
+        if (published != null && prefix(port, token).equals(prefix(published)) && !FILE.delete()) {
+            LOG.debug("unable to delete ", FILE);
+        }
+        hostedPrefix = null;
+        hostedToken = null;
+    }
+
+    public static synchronized boolean isHosting() {
+        return hostedPrefix != null;
+    }
+
+    @NotNull
+    public static String includedHeader(File file, long lastModified) {
+        return lastModified + " " + URLEncoder.encode(file.getAbsolutePath(), StandardCharsets.UTF_8);
+    }
+
+    @Nullable
+    public static String encodeHeader(@Nullable String value) {
+        return value == null ? null : URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    @Nullable
+    public static String decodeHeader(@Nullable String header) {
+        try {
+            return header == null ? null : URLDecoder.decode(header, StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            LOG.debug("invalid header ", header, e);
+            return null;
+        }
+    }
+
+    @NotNull
+    public static LinkedHashMap<File, Long> parseIncluded(List<String> headers) {
+        LinkedHashMap<File, Long> result = new LinkedHashMap<>();
+        for (String header : headers) {
+            int space = header.indexOf(' ');
+            try {
+                result.put(new File(URLDecoder.decode(header.substring(space + 1), StandardCharsets.UTF_8)), Long.parseLong(header.substring(0, space)));
+            } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+                LOG.debug("invalid header ", header, e);
+            }
+        }
+        return result;
+    }
+
+    private static String prefix(int port, String token) {
+        return "http://127.0.0.1:" + port + "/" + token;
+    }
+
+    @Nullable
+    private static String prefix(Properties published) {
+        String token = published.getProperty(TOKEN);
+        try {
+            return token == null ? null : prefix(Integer.parseInt(published.getProperty(PORT)), token);
+        } catch (NumberFormatException e) {
+            LOG.debug("invalid port in ", FILE, e);
+            return null;
+        }
+    }
+
+    @Nullable
+    private static Properties read() {
+        if (!FILE.isFile()) {
+            return null;
+        }
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(FILE.toPath())) {
+            properties.load(in);
+            return properties;
+        } catch (IOException | IllegalArgumentException e) {
+            LOG.debug("unable to read ", FILE, e);
+            return null;
+        }
+    }
+
+    private static boolean ping(String prefix) {
+        try {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(prefix + PING))
+                    .timeout(Duration.ofSeconds(1))
+                    .build();
+            return CLIENT.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200;
+        } catch (IOException e) {
+            LOG.debug("shared render server ", prefix, " not running: ", e);
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
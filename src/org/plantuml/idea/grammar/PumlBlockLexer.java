@@ -0,0 +1,144 @@
+package org.plantuml.idea.grammar;
+
+import com.intellij.lexer.Lexer;
+import com.intellij.lexer.LexerBase;
+import com.intellij.psi.TokenType;
+import com.intellij.psi.tree.IElementType;
+import com.intellij.util.text.CharArrayUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.plantuml.idea.grammar.psi.PumlBlockElementType;
+import org.plantuml.idea.grammar.psi.PumlTypes;
+
+/**
+ * Lexer of the parser, returns each {@code @start...@end} block as a single {@link PumlBlockElementType#BLOCK}
+ * token, which is parsed lazily and reparsed alone when edited. Tokens outside of blocks are the ones of
+ * {@link PumlLexerAdapter}, which also lexes the block contents.
+ * <p>
+ * A block starts with the first token of a line starting with {@code @start} and ends with the line starting with
+ * {@code @end}, the same as in PlantUML. An unterminated block is not a block.
+ */
+public class PumlBlockLexer extends LexerBase {
+    private static final String START = "@start";
+    private static final String END = "@end";
+
+    private final Lexer lexer = new PumlLexerAdapter();
+    private CharSequence buffer;
+    private int endOffset;
+
+    private IElementType tokenType;
+    private int tokenStart;
+    private int tokenEnd;
+    private int state;
+    private boolean lineStart;
+    /**
+     * no @end follows, so no block can be found till the end
+     */
+    private boolean unterminated;
+
+    @Override
+    public void start(@NotNull CharSequence buffer, int startOffset, int endOffset, int initialState) {
+        this.buffer = buffer;
+        this.endOffset = endOffset;
+        this.lineStart = startOffset == 0 || buffer.charAt(startOffset - 1) == '\n' || buffer.charAt(startOffset - 1) == '\r';
+        this.unterminated = false;
+        lexer.start(buffer, startOffset, endOffset, initialState);
+        locateToken();
+    }
+
+    private void locateToken() {
+        state = lexer.getState();
+        tokenType = lexer.getTokenType();
+        tokenStart = lexer.getTokenStart();
+        tokenEnd = lexer.getTokenEnd();
+        if (tokenType == null) {
+            return;
+        }
+        boolean atLineStart = lineStart;
+        lineStart = tokenType == PumlTypes.NEW_LINE || (lineStart && tokenType == TokenType.WHITE_SPACE);
+        if (atLineStart && !unterminated && startsWith(tokenType, tokenStart, START)) {
+            int blockEnd = findBlockEnd();
+            if (blockEnd < 0) {
+                unterminated = true;
+                lexer.start(buffer, tokenStart, endOffset, state);
+                locateToken();
+            } else {
+                tokenType = PumlBlockElementType.BLOCK;
+                tokenEnd = blockEnd;
+            }
+        }
+    }
+
+    /**
+     * Advances the lexer after the block.
+     *
+     * @return end of the line with @end, or -1
+     */
+    private int findBlockEnd() {
+        boolean lineStart = false;
+        lexer.advance();
+        IElementType type;
+        while ((type = lexer.getTokenType()) != null) {
+            if (lineStart && startsWith(type, lexer.getTokenStart(), END)) {
+                int end = lexer.getTokenEnd();
+                lexer.advance();
+                while ((type = lexer.getTokenType()) != null && type != PumlTypes.NEW_LINE) {
+                    end = lexer.getTokenEnd();
+                    lexer.advance();
+                }
+                return end;
+            }
+            lineStart = type == PumlTypes.NEW_LINE || (lineStart && type == TokenType.WHITE_SPACE);
+            lexer.advance();
+        }
+        return -1;
+    }
+
+    private boolean startsWith(IElementType type, int offset, String prefix) {
+        int end = offset + prefix.length();
+        return type == PumlTypes.IDENTIFIER && end <= endOffset && CharArrayUtil.regionMatches(buffer, offset, end, prefix);
+    }
+
+    @Override
+    public void advance() {
+        if (tokenType == null) {
+            return;
+        }
+        if (tokenType != PumlBlockElementType.BLOCK) {
+            lexer.advance();
+        }
+        locateToken();
+    }
+
+    @Override
+    public int getState() {
+        return state;
+    }
+
+    @Nullable
+    @Override
+    public IElementType getTokenType() {
+        return tokenType;
+    }
+
+    @Override
+    public int getTokenStart() {
+        return tokenStart;
+    }
+
+    @Override
+    public int getTokenEnd() {
+        return tokenEnd;
+    }
+
+    @NotNull
+    @Override
+    public CharSequence getBufferSequence() {
+        return buffer;
+    }
+
+    @Override
+    public int getBufferEnd() {
+        return endOffset;
+    }
+}
@@ -0,0 +1,92 @@
+package org.plantuml.idea.grammar;
+
+import com.intellij.lexer.Lexer;
+import com.intellij.openapi.fileTypes.FileType;
+import com.intellij.psi.tree.IElementType;
+import com.intellij.util.indexing.*;
+import com.intellij.util.io.DataExternalizer;
+import com.intellij.util.io.EnumeratorIntegerDescriptor;
+import com.intellij.util.io.EnumeratorStringDescriptor;
+import com.intellij.util.io.KeyDescriptor;
+import org.jetbrains.annotations.NotNull;
+import org.plantuml.idea.grammar.psi.PumlTypes;
+import org.plantuml.idea.lang.PlantUmlFileType;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Text of each {@link org.plantuml.idea.grammar.psi.PumlItem} to the offset of its first occurrence in a file,
+ * so that declarations in other files are found without parsing all of them.
+ * <p>
+ * Built by the lexer only, items are top level tokens the same as in the grammar - except the rest of an
+ * {@code !include} line.
+ */
+public class PumlDeclarationIndex extends FileBasedIndexExtension<String, Integer> {
+    public static final ID<String, Integer> NAME = ID.create("PlantUML.declarations");
+
+    private static final String INCLUDE = "!include";
+
+    @NotNull
+    @Override
+    public ID<String, Integer> getName() {
+        return NAME;
+    }
+
+    @NotNull
+    @Override
+    public DataIndexer<String, Integer, FileContent> getIndexer() {
+        return inputData -> index(inputData.getContentAsText());
+    }
+
+    @NotNull
+    static Map<String, Integer> index(CharSequence text) {
+        Map<String, Integer> result = new HashMap<>();
+        Lexer lexer = new PumlLexerAdapter();
+        lexer.start(text);
+        boolean inInclude = false;
+        IElementType type;
+        while ((type = lexer.getTokenType()) != null) {
+            if (type == PumlTypes.NEW_LINE) {
+                inInclude = false;
+            } else if (!inInclude && (type == PumlTypes.IDENTIFIER || type == PumlTypes.OTHER)) {
+                String token = text.subSequence(lexer.getTokenStart(), lexer.getTokenEnd()).toString();
+                if (INCLUDE.equalsIgnoreCase(token)) {
+                    inInclude = true;
+                } else {
+                    result.putIfAbsent(token, lexer.getTokenStart());
+                }
+            }
+            lexer.advance();
+        }
+        return result;
+    }
+
+    @NotNull
+    @Override
+    public KeyDescriptor<String> getKeyDescriptor() {
+        return EnumeratorStringDescriptor.INSTANCE;
+    }
+
+    @NotNull
+    @Override
+    public DataExternalizer<Integer> getValueExternalizer() {
+        return EnumeratorIntegerDescriptor.INSTANCE;
+    }
+
+    @Override
+    public int getVersion() {
+        return 1;
+    }
+
+    @NotNull
+    @Override
+    public FileBasedIndex.InputFilter getInputFilter() {
+        return new DefaultFileTypeSpecificInputFilter(new FileType[]{PlantUmlFileType.INSTANCE});
+    }
+
+    @Override
+    public boolean dependsOnFileContent() {
+        return true;
+    }
+}
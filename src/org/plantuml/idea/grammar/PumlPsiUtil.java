@@ -1,92 +1,120 @@
 package org.plantuml.idea.grammar;
 
 import com.intellij.openapi.project.Project;
-import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiFile;
 import com.intellij.psi.PsiManager;
-import com.intellij.psi.search.FileTypeIndex;
 import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.psi.util.CachedValueProvider;
+import com.intellij.psi.util.CachedValuesManager;
 import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.util.indexing.FileBasedIndex;
 import org.jetbrains.annotations.NotNull;
+import org.plantuml.idea.grammar.psi.PumlBlock;
 import org.plantuml.idea.grammar.psi.PumlItem;
-import org.plantuml.idea.lang.PlantUmlFileType;
 
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Collections;
-import java.util.List;
+import java.util.*;
 
 public class PumlPsiUtil {
 
+    /**
+     * @return the declaration - first occurrence of the key, or all other occurrences if the element is the declaration
+     */
     public static List<PumlItem> findDeclarationOrUsagesInFile(PsiFile containingFile, @NotNull PumlItem element, String key) {
-        List<PumlItem> result = new ArrayList<>();
-        PumlItem[] items = PsiTreeUtil.getChildrenOfType(containingFile, PumlItem.class);
-        boolean returnFirst = true;
-        boolean firstMatch = true;
-
-        if (items != null) {
-            for (PumlItem item : items) {
-                if (key.equals(item.getText())) {
-                    if (firstMatch && item == element) {
-                        returnFirst = false;
-                        continue;
-                    }
-
-                    result.add(item);
-                    if (returnFirst) {
-                        break;
-                    }
-                    firstMatch = false;
-                }
-            }
+        List<PumlItem> occurrences = getFileItems(containingFile).getOccurrences(key);
+        if (occurrences.isEmpty()) {
+            return new ArrayList<>();
+        }
+        if (occurrences.get(0) == element) {
+            return new ArrayList<>(occurrences.subList(1, occurrences.size()));
         }
+        List<PumlItem> result = new ArrayList<>();
+        result.add(occurrences.get(0));
         return result;
     }
 
+    /**
+     * @return the first occurrence of the key, if it is before the element
+     */
     public static PumlItem findDeclarationInFile(PsiFile containingFile, @NotNull PumlItem element, String key) {
-        PumlItem[] items = PsiTreeUtil.getChildrenOfType(containingFile, PumlItem.class);
-        if (items != null) {
-            for (PumlItem item : items) {
-                if (item == element) {
-                    return null;
-                }
-                if (key.equals(item.getText())) {
-                    return item;
-                }
-            }
+        List<PumlItem> occurrences = getFileItems(containingFile).getOccurrences(key);
+        if (occurrences.isEmpty()) {
+            return null;
         }
-        return null;
+        PumlItem first = occurrences.get(0);
+        if (first == element || first.getTextOffset() > element.getTextOffset()) {
+            return null;
+        }
+        return first;
     }
 
+    /**
+     * Only files declaring the key are parsed, see {@link PumlDeclarationIndex}.
+     */
     public static List<PumlItem> findDeclarationInAllFiles(Project project, String key) {
+        return findDeclarationInAllFiles(project, key, GlobalSearchScope.allScope(project));
+    }
+
+    public static List<PumlItem> findDeclarationInAllFiles(Project project, String key, GlobalSearchScope scope) {
         List<PumlItem> result = new ArrayList<>();
-        Collection<VirtualFile> virtualFiles = FileTypeIndex.getFiles(PlantUmlFileType.INSTANCE, GlobalSearchScope.allScope(project));
-        for (VirtualFile virtualFile : virtualFiles) {
-            PsiFile simpleFile = (PsiFile) PsiManager.getInstance(project).findFile(virtualFile);
-            if (simpleFile != null) {
-                PumlItem[] properties = PsiTreeUtil.getChildrenOfType(simpleFile, PumlItem.class);
-                if (properties != null) {
-                    for (PumlItem property : properties) {
-                        if (key.equals(property.getText())) {
-                            result.add(property);
-                            break;
-                        }
-                    }
+        PsiManager psiManager = PsiManager.getInstance(project);
+        FileBasedIndex.getInstance().processValues(PumlDeclarationIndex.NAME, key, null, (virtualFile, offset) -> {
+            PsiFile psiFile = psiManager.findFile(virtualFile);
+            if (psiFile != null) {
+                PumlItem item = PsiTreeUtil.getParentOfType(psiFile.findElementAt(offset), PumlItem.class, false);
+                if (item != null && key.equals(item.getText())) {
+                    result.add(item);
                 }
             }
-        }
+            return true;
+        }, scope);
         return result;
     }
 
     public static List<PumlItem> findAll(PsiFile file) {
         List<PumlItem> result = new ArrayList<>();
         if (file != null) {
-            PumlItem[] items = PsiTreeUtil.getChildrenOfType(file, PumlItem.class);
-            if (items != null) {
-                Collections.addAll(result, items);
+            Collections.addAll(result, getFileItems(file).items);
+        }
+        return result;
+    }
+
+    /**
+     * Children of the file and of its blocks, in document order.
+     */
+    @SafeVarargs
+    public static List<PsiElement> getChildrenOfAnyType(PsiFile file, Class<? extends PsiElement>... classes) {
+        List<PsiElement> result = new ArrayList<>();
+        for (PsiElement child = file.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child instanceof PumlBlock) {
+                result.addAll(PsiTreeUtil.getChildrenOfAnyType(child, classes));
+            } else if (PsiTreeUtil.instanceOf(child, classes)) {
+                result.add(child);
             }
         }
         return result;
     }
 
+    private static FileItems getFileItems(PsiFile file) {
+        return CachedValuesManager.getCachedValue(file, () -> CachedValueProvider.Result.create(new FileItems(file), file));
+    }
+
+    /**
+     * Top level items of a file and its blocks, and their occurrences by text, in document order.
+     */
+    private static class FileItems {
+        private final PumlItem[] items;
+        private final Map<String, List<PumlItem>> occurrences = new HashMap<>();
+
+        FileItems(PsiFile file) {
+            this.items = getChildrenOfAnyType(file, PumlItem.class).toArray(new PumlItem[0]);
+            for (PumlItem item : this.items) {
+                occurrences.computeIfAbsent(item.getText(), k -> new ArrayList<>()).add(item);
+            }
+        }
+
+        List<PumlItem> getOccurrences(String key) {
+            return occurrences.getOrDefault(key, Collections.emptyList());
+        }
+    }
 }
@@ -0,0 +1,42 @@
+package org.plantuml.idea.grammar.navigation;
+
+import com.intellij.navigation.ChooseByNameContributor;
+import com.intellij.navigation.NavigationItem;
+import com.intellij.openapi.project.Project;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.util.ArrayUtil;
+import com.intellij.util.indexing.FileBasedIndex;
+import org.jetbrains.annotations.NotNull;
+import org.plantuml.idea.grammar.PumlDeclarationIndex;
+import org.plantuml.idea.grammar.PumlPsiUtil;
+import org.plantuml.idea.grammar.psi.PumlItem;
+import org.plantuml.idea.util.Utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Go to Symbol for the first occurrences of identifiers, served from {@link PumlDeclarationIndex}.
+ */
+public class PumlGotoSymbolContributor implements ChooseByNameContributor {
+
+    @NotNull
+    @Override
+    public String[] getNames(Project project, boolean includeNonProjectItems) {
+        List<String> names = new ArrayList<>();
+        for (String key : FileBasedIndex.getInstance().getAllKeys(PumlDeclarationIndex.NAME, project)) {
+            if (Utils.containsLettersOrNumbers(key)) {
+                names.add(key);
+            }
+        }
+        return ArrayUtil.toStringArray(names);
+    }
+
+    @NotNull
+    @Override
+    public NavigationItem[] getItemsByName(String name, String pattern, Project project, boolean includeNonProjectItems) {
+        GlobalSearchScope scope = includeNonProjectItems ? GlobalSearchScope.allScope(project) : GlobalSearchScope.projectScope(project);
+        List<PumlItem> items = PumlPsiUtil.findDeclarationInAllFiles(project, name, scope);
+        return items.toArray(new NavigationItem[0]);
+    }
+}
@@ -1,5 +1,6 @@
 package org.plantuml.idea.grammar.navigation;
 
+import com.intellij.codeInsight.completion.CompletionUtil;
 import com.intellij.codeInsight.completion.InsertHandler;
 import com.intellij.codeInsight.completion.InsertionContext;
 import com.intellij.codeInsight.lookup.Lookup;
@@ -11,8 +12,10 @@ import com.intellij.openapi.editor.Editor;
 import com.intellij.openapi.util.TextRange;
 import com.intellij.psi.AbstractElementManipulator;
 import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
 import com.intellij.psi.PsiReferenceBase;
-import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.psi.util.CachedValueProvider;
+import com.intellij.psi.util.CachedValuesManager;
 import com.intellij.util.IncorrectOperationException;
 import org.apache.commons.lang.StringUtils;
 import org.jetbrains.annotations.NotNull;
@@ -22,10 +25,7 @@ import org.plantuml.idea.grammar.psi.PumlItem;
 import org.plantuml.idea.grammar.psi.PumlTypes;
 import org.plantuml.idea.lang.PlantUmlFileType;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashSet;
-import java.util.List;
+import java.util.*;
 
 public class PumlItemReference extends PsiReferenceBase<PumlItem> {
 
@@ -53,44 +53,80 @@ public class PumlItemReference extends PsiReferenceBase<PumlItem> {
         return PumlPsiUtil.findDeclarationInFile(getElement().getContainingFile(), getElement(), key);
     }
 
+    /**
+     * Variants are prepared once per file modification, see {@link ItemVariants}.
+     */
     @NotNull
     @Override
     public Object[] getVariants() {
-        PumlItem[] childrenOfType = PsiTreeUtil.getChildrenOfType(myElement.getContainingFile(), PumlItem.class);
-        HashSet<String> added = new HashSet<>();
-        List<LookupElement> variants = new ArrayList<>();
+        PsiFile file = CompletionUtil.getOriginalOrSelf(myElement.getContainingFile());
+        ItemVariants variants = CachedValuesManager.getCachedValue(file, () -> CachedValueProvider.Result.create(new ItemVariants(file), file));
+        return variants.get(completionPrefix());
+    }
+
+    /**
+     * completion runs on a copy of the file, with a dummy identifier inserted at the caret
+     */
+    private String completionPrefix() {
+        String text = myElement.getText();
+        int index = text.indexOf(CompletionUtil.DUMMY_IDENTIFIER_TRIMMED);
+        return index < 0 ? "" : text.substring(0, index);
+    }
+
+    @Nullable
+    private static String sanitize(String text) {
+        text = StringUtils.removeStart(text, "\"");
+        text = StringUtils.removeStart(text, "[");
+        text = StringUtils.removeStart(text, "(");
+        return text;
+    }
+
+    /**
+     * Lookup elements of distinct identifiers of a file. Filtering by the prefix is left to the result set matcher,
+     * which also accepts camel hump and typo tolerant matches.
+     */
+    static class ItemVariants {
+        private final LookupElement[] all;
+        /**
+         * elements of identifiers occurring once, the item being typed is not offered back
+         */
+        private final Map<String, LookupElement> single = new HashMap<>();
 
-        if (childrenOfType != null) {
-            for (final PumlItem item : childrenOfType) {
+        ItemVariants(PsiFile file) {
+            List<LookupElement> variants = new ArrayList<>();
+            Map<String, Integer> occurrences = new HashMap<>();
+            for (final PumlItem item : PumlPsiUtil.findAll(file)) {
                 if (item.getNode().getFirstChildNode().getElementType() != PumlTypes.IDENTIFIER) {
                     continue;
                 }
                 String text = item.getText();
-                if (!added.contains(text)) {
-                    added.add(text);
-                    if (text != null && text.length() > 0) {
-                        variants.add(LookupElementBuilder
-                                        .create(item).withIcon(PlantUmlFileType.PLANTUML_ICON)
-//                                        .withTypeText(item.getContainingFile().getName())
-                                        .withCaseSensitivity(true)
-                                        .withBoldness(true)
-                                        .withLookupStrings(Arrays.asList(text, sanitize(text)))
-                                        .withInsertHandler(new LookupElementInsertHandler())
-                        );
-                    }
+                if (text == null || text.length() == 0 || occurrences.merge(text, 1, Integer::sum) > 1) {
+                    single.remove(text);
+                    continue;
                 }
-
+                String sanitized = sanitize(text);
+                LookupElement element = LookupElementBuilder
+                        .create(item).withIcon(PlantUmlFileType.PLANTUML_ICON)
+//                        .withTypeText(item.getContainingFile().getName())
+                        .withCaseSensitivity(true)
+                        .withBoldness(true)
+                        .withLookupStrings(Arrays.asList(text, sanitized))
+                        .withInsertHandler(new LookupElementInsertHandler());
+                variants.add(element);
+                single.put(text, element);
             }
+            all = variants.toArray(LookupElement.EMPTY_ARRAY);
         }
-        return variants.toArray();
-    }
 
-    @Nullable
-    private String sanitize(String text) {
-        text = StringUtils.removeStart(text, "\"");
-        text = StringUtils.removeStart(text, "[");
-        text = StringUtils.removeStart(text, "(");
-        return text;
+        Object[] get(String prefix) {
+            LookupElement typed = single.get(prefix);
+            if (typed == null) {
+                return all;
+            }
+            List<LookupElement> result = new ArrayList<>(Arrays.asList(all));
+            result.remove(typed);
+            return result.toArray();
+        }
     }
 
     static class LookupElementInsertHandler implements InsertHandler<LookupElement> {
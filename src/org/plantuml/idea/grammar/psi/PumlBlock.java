@@ -0,0 +1,20 @@
+package org.plantuml.idea.grammar.psi;
+
+import com.intellij.psi.impl.source.tree.LazyParseablePsiElement;
+import com.intellij.psi.tree.IElementType;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * @see PumlBlockElementType
+ */
+public class PumlBlock extends LazyParseablePsiElement {
+
+    public PumlBlock(@NotNull IElementType type, CharSequence buffer) {
+        super(type, buffer);
+    }
+
+    @Override
+    public String toString() {
+        return "PumlBlock";
+    }
+}
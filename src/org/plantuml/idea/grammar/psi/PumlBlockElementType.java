@@ -0,0 +1,54 @@
+package org.plantuml.idea.grammar.psi;
+
+import com.intellij.lang.ASTNode;
+import com.intellij.lang.Language;
+import com.intellij.lang.PsiBuilder;
+import com.intellij.lang.PsiBuilderFactory;
+import com.intellij.lexer.Lexer;
+import com.intellij.openapi.project.Project;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.tree.IReparseableElementType;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.plantuml.idea.grammar.PumlBlockLexer;
+import org.plantuml.idea.grammar.PumlLexerAdapter;
+import org.plantuml.idea.grammar.parser.PumlParser;
+import org.plantuml.idea.lang.PlantUmlLanguage;
+
+/**
+ * A {@code @start...@end} block, see {@link PumlBlockLexer}. Parsed on demand, and an edit inside of a block
+ * reparses only that block, as long as it stays a single block.
+ */
+public class PumlBlockElementType extends IReparseableElementType {
+
+    public static final PumlBlockElementType BLOCK = new PumlBlockElementType("BLOCK");
+
+    public PumlBlockElementType(@NotNull @NonNls String debugName) {
+        super(debugName, PlantUmlLanguage.INSTANCE);
+    }
+
+    @Override
+    protected ASTNode doParseContents(@NotNull ASTNode chameleon, @NotNull PsiElement psi) {
+        Project project = psi.getProject();
+        PsiBuilder builder = PsiBuilderFactory.getInstance().createBuilder(project, chameleon, new PumlLexerAdapter(), getLanguage(), chameleon.getChars());
+        return new PumlParser().parse(this, builder).getFirstChildNode();
+    }
+
+    @Nullable
+    @Override
+    public ASTNode createNode(CharSequence text) {
+        return new PumlBlock(this, text);
+    }
+
+    @Override
+    public boolean isParsable(@NotNull CharSequence buffer, @NotNull Language fileLanguage, @NotNull Project project) {
+        Lexer lexer = new PumlBlockLexer();
+        lexer.start(buffer);
+        if (lexer.getTokenType() != BLOCK || lexer.getTokenStart() != 0 || lexer.getTokenEnd() != buffer.length()) {
+            return false;
+        }
+        lexer.advance();
+        return lexer.getTokenType() == null;
+    }
+}
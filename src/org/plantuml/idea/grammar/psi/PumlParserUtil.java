@@ -11,4 +11,14 @@ public class PumlParserUtil extends GeneratedParserUtilBase {
 
         return true;
     }
+
+    /**
+     * @see PumlBlockElementType
+     */
+    public static boolean block(SyntaxTreeBuilder b, @SuppressWarnings("UnusedParameters") int level) {
+        if (b.getTokenType() != PumlBlockElementType.BLOCK) return false;
+        b.advanceLexer();
+
+        return true;
+    }
 }
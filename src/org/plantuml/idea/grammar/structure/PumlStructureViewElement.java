@@ -6,11 +6,13 @@ import com.intellij.ide.util.treeView.smartTree.SortableTreeElement;
 import com.intellij.ide.util.treeView.smartTree.TreeElement;
 import com.intellij.navigation.ItemPresentation;
 import com.intellij.openapi.diagnostic.Logger;
-import com.intellij.openapi.editor.Document;
 import com.intellij.psi.NavigatablePsiElement;
 import com.intellij.psi.PsiElement;
-import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.psi.util.CachedValueProvider;
+import com.intellij.psi.util.CachedValuesManager;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.plantuml.idea.grammar.PumlPsiUtil;
 import org.plantuml.idea.grammar.psi.PumlInclude;
 import org.plantuml.idea.grammar.psi.PumlItem;
 import org.plantuml.idea.grammar.psi.PumlTypes;
@@ -26,20 +28,12 @@ public class PumlStructureViewElement implements StructureViewTreeElement, Sorta
     private static final Logger LOG = Logger.getInstance(PumlStructureViewElement.class);
 
     private final NavigatablePsiElement myElement;
-    private final Document document;
-    private String line;
+    @Nullable
+    private final String line;
 
-    public PumlStructureViewElement(NavigatablePsiElement element, Document document) {
+    public PumlStructureViewElement(NavigatablePsiElement element, @Nullable String line) {
         this.myElement = element;
-        this.document = document;
-        try {
-            if (element.isValid()) {
-                line = "line: " + document.getLineNumber(element.getTextOffset());
-            }
-        } catch (Throwable e) {
-            //old document, ignore, (maybe #isValid solves it, dunno)
-            LOG.debug(e);
-        }
+        this.line = line;
     }
 
     @Override
@@ -86,28 +80,43 @@ public class PumlStructureViewElement implements StructureViewTreeElement, Sorta
     @Override
     public TreeElement[] getChildren() {
         if (myElement instanceof PlantUmlFileImpl) {
-            List<TreeElement> treeElements = new ArrayList<>();
-            List<PsiElement> list = PsiTreeUtil.getChildrenOfAnyType(myElement, PumlInclude.class, PumlItem.class);
+            PlantUmlFileImpl file = (PlantUmlFileImpl) myElement;
+            return CachedValuesManager.getCachedValue(file, () -> CachedValueProvider.Result.create(createChildren(file), file));
+        }
+        return EMPTY_ARRAY;
+    }
 
-            HashSet<String> strings = new HashSet<>();
-            for (final PsiElement item : list) {
-                if (item instanceof PumlItemImpl) {
-                    if (item.getFirstChild().getNode().getElementType() != PumlTypes.IDENTIFIER) {
-                        continue;
-                    }
+    /**
+     * Elements are in document order, so line numbers are counted in a single pass over the text.
+     */
+    private static TreeElement[] createChildren(PlantUmlFileImpl file) {
+        long start = System.currentTimeMillis();
+        List<TreeElement> treeElements = new ArrayList<>();
+        List<PsiElement> list = PumlPsiUtil.getChildrenOfAnyType(file, PumlInclude.class, PumlItem.class);
+        CharSequence chars = file.getNode().getChars();
+        int offset = 0;
+        int lineNumber = 0;
+
+        HashSet<String> strings = new HashSet<>();
+        for (final PsiElement item : list) {
+            if (item instanceof PumlItemImpl) {
+                if (item.getFirstChild().getNode().getElementType() != PumlTypes.IDENTIFIER) {
+                    continue;
                 }
-                String text = item.getText();
-                if (!strings.contains(text)) {
-                    strings.add(text);
-                    if (text != null && text.length() > 0) {
-                        treeElements.add(new PumlStructureViewElement((NavigatablePsiElement) item, document));
+            }
+            String text = item.getText();
+            if (text != null && text.length() > 0 && strings.add(text)) {
+                int textOffset = item.getTextOffset();
+                for (; offset < textOffset && offset < chars.length(); offset++) {
+                    if (chars.charAt(offset) == '\n') {
+                        lineNumber++;
                     }
                 }
+                treeElements.add(new PumlStructureViewElement((NavigatablePsiElement) item, "line: " + lineNumber));
             }
-
-            return treeElements.toArray(new TreeElement[0]);
         }
-        return EMPTY_ARRAY;
+        LOG.debug("structure of ", file.getName(), " created in ", System.currentTimeMillis() - start, "ms");
+        return treeElements.toArray(new TreeElement[0]);
     }
 
 }
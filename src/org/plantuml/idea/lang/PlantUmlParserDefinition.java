@@ -12,7 +12,7 @@ import com.intellij.psi.tree.IFileElementType;
 import com.intellij.psi.tree.TokenSet;
 import com.intellij.psi.util.PsiUtilCore;
 import org.jetbrains.annotations.NotNull;
-import org.plantuml.idea.grammar.PumlLexerAdapter;
+import org.plantuml.idea.grammar.PumlBlockLexer;
 import org.plantuml.idea.grammar.parser.PumlParser;
 import org.plantuml.idea.grammar.psi.PumlTypes;
 import org.plantuml.idea.lang.settings.PlantUmlSettings;
@@ -46,7 +46,7 @@ public class PlantUmlParserDefinition implements ParserDefinition {
     @NotNull
     public Lexer createLexer(Project project) {
         if (enabled()) {
-            return new PumlLexerAdapter();
+            return new PumlBlockLexer();
         } else {
             return new EmptyLexer();
         }
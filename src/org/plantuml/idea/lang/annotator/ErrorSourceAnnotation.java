@@ -25,6 +25,10 @@ public class ErrorSourceAnnotation implements SourceAnnotation {
     private Collection<String> errorMessage;
     private Collection<String> suggestion;
     private int lineNumber;
+    /**
+     * result of an older source, the check of the current one timed out
+     */
+    private boolean stale;
 
     public ErrorSourceAnnotation(Collection<String> errormsg, Collection<String> suggestion, int errorLineNumber) {
         this.errorMessage = errormsg;
@@ -32,12 +36,26 @@ public class ErrorSourceAnnotation implements SourceAnnotation {
         lineNumber = errorLineNumber;
     }
 
+    public boolean isStale() {
+        return stale;
+    }
+
+    public ErrorSourceAnnotation asStale() {
+        if (stale) {
+            return this;
+        }
+        ErrorSourceAnnotation annotation = new ErrorSourceAnnotation(errorMessage, null, lineNumber);
+        annotation.stale = true;
+        return annotation;
+    }
+
     @Override
     public String toString() {
         return "SourceAnnotationResult{" +
                 "errorMessage=" + errorMessage +
                 ", suggestion=" + suggestion +
                 ", lineNumber=" + lineNumber +
+                ", stale=" + stale +
                 '}';
     }
 
@@ -45,10 +63,17 @@ public class ErrorSourceAnnotation implements SourceAnnotation {
     public void annotate(AnnotationHolder holder, Document document, int sourceOffset) {
         int sourceStartLineNumber = document.getLineNumber(sourceOffset);
         int errorLineNumber = lineNumber + sourceStartLineNumber;
+        if (errorLineNumber >= document.getLineCount()) {
+            return;
+        }
         int startoffset = document.getLineStartOffset(errorLineNumber);
         int endoffset = document.getLineEndOffset(errorLineNumber);
         TextRange range = TextRange.create(startoffset, endoffset);
         String errMessage = Joiner.on("\n").join(errorMessage);
+        if (stale) {
+            holder.createWeakWarningAnnotation(range, "Syntax check timed out, last result:\n" + errMessage);
+            return;
+        }
         Annotation errorAnnotation = holder.createErrorAnnotation(range,
                 errMessage);
         for (String s : cleanupSuggestions(suggestion)) {
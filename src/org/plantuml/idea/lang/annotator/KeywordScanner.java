@@ -0,0 +1,254 @@
+package org.plantuml.idea.lang.annotator;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collection;
+
+import static org.plantuml.idea.lang.annotator.LanguageDescriptor.TAGS;
+
+/**
+ * Classifies line comments, keywords, types, plugin settings, preprocessor directives and tags of a source
+ * in a single pass per line, using a trie built from {@link LanguageDescriptor}.
+ * <p>
+ * Semantics are those of the former per-line patterns:
+ * <ul>
+ * <li>a line starting with optional whitespace and {@code '} is a comment</li>
+ * <li>keywords, keywords2 and types are whole words, highlighted only before the first {@code :} and outside of
+ * {@code []}, {@code ()} and {@code ""}</li>
+ * <li>preprocessor directives and tags are matched anywhere, but must end on a word boundary</li>
+ * <li>a multi-word keyword wins over its first word, e.g. {@code top to bottom direction} over {@code top}</li>
+ * </ul>
+ */
+public enum KeywordScanner {
+    INSTANCE;
+
+    public enum Kind {
+        LINE_COMMENT,
+        KEYWORD,
+        PLUGIN_SETTING,
+        PREPROC,
+        TAG
+    }
+
+    public interface Listener {
+        void token(int start, int end, Kind kind);
+    }
+
+    private final Node root = new Node();
+
+    KeywordScanner() {
+        LanguageDescriptor descriptor = LanguageDescriptor.INSTANCE;
+        add(descriptor.keywords, Kind.KEYWORD);
+        add(descriptor.keywords2, Kind.KEYWORD);
+        add(descriptor.types, Kind.KEYWORD);
+        add(descriptor.pluginSettingsPattern, Kind.PLUGIN_SETTING);
+        add(descriptor.preproc, Kind.PREPROC);
+        for (String tag : TAGS.split("\\|")) {
+            add("@start" + tag, Kind.TAG);
+            add("@end" + tag, Kind.TAG);
+        }
+    }
+
+    private void add(Collection<String> tokens, Kind kind) {
+        for (String token : tokens) {
+            add(token, kind);
+        }
+    }
+
+    private void add(String token, Kind kind) {
+        Node node = root;
+        for (int i = 0; i < token.length(); i++) {
+            node = node.child(token.charAt(i), true);
+        }
+        if (node.kind == null) {
+            node.kind = kind;
+        }
+    }
+
+    /**
+     * @param source all reported offsets are relative to it
+     */
+    public void scan(CharSequence source, boolean keywordHighlighting, Listener listener) {
+        int length = source.length();
+        int lineStart = 0;
+        while (lineStart <= length) {
+            int lineEnd = indexOf(source, '\n', lineStart, length);
+            if (lineEnd < 0) {
+                lineEnd = length;
+            }
+            scanLine(source, lineStart, lineEnd, keywordHighlighting, listener);
+            lineStart = lineEnd + 1;
+        }
+    }
+
+    private void scanLine(CharSequence s, int start, int end, boolean keywordHighlighting, Listener listener) {
+        int i = start;
+        while (i < end && isWhitespace(s.charAt(i))) {
+            i++;
+        }
+        if (i < end && s.charAt(i) == '\'') {
+            listener.token(start, end, Kind.LINE_COMMENT);
+            return;
+        }
+
+        //it seems no keywords are after :
+        int keywordsEnd = indexOf(s, ':', start, end);
+        if (keywordsEnd <= start) {
+            keywordsEnd = end;
+        }
+        //not reliable when mixed braces ([)...(]), but it don't need to be
+        int lastBracket = lastIndexOf(s, ']', start, keywordsEnd);
+        int lastParenthesis = lastIndexOf(s, ')', start, keywordsEnd);
+        int lastQuote = lastIndexOf(s, '"', start, keywordsEnd);
+        boolean inBracket = false;
+        boolean inParenthesis = false;
+        boolean inQuote = false;
+        boolean closeBracket = false;
+        boolean closeParenthesis = false;
+        boolean closeQuote = false;
+
+        i = start;
+        while (i < end) {
+            char c = s.charAt(i);
+            if (i < keywordsEnd) {
+                if (closeBracket) {
+                    inBracket = closeBracket = false;
+                }
+                if (closeParenthesis) {
+                    inParenthesis = closeParenthesis = false;
+                }
+                if (closeQuote) {
+                    inQuote = closeQuote = false;
+                }
+                if (c == '[' && !inBracket && lastBracket > i) {
+                    inBracket = true;
+                } else if (c == ']' && inBracket) {
+                    closeBracket = true;
+                }
+                if (c == '(' && !inParenthesis && lastParenthesis > i) {
+                    inParenthesis = true;
+                } else if (c == ')' && inParenthesis) {
+                    closeParenthesis = true;
+                }
+                if (c == '"') {
+                    if (inQuote) {
+                        closeQuote = true;
+                    } else if (lastQuote > i) {
+                        inQuote = true;
+                    }
+                }
+            }
+
+            if (c == '!' || c == '@') {
+                //the word after the sign is still scanned, as with the former patterns
+                int matchEnd = match(s, i, end);
+                if (matchEnd > 0) {
+                    listener.token(i, matchEnd, kindAt(s, i, matchEnd));
+                }
+            } else if (isWordChar(c) && (i == start || !isWordChar(s.charAt(i - 1)))) {
+                int matchEnd = match(s, i, end);
+                if (matchEnd > 0) {
+                    Kind kind = kindAt(s, i, matchEnd);
+                    if (kind == Kind.PLUGIN_SETTING) {
+                        listener.token(i, matchEnd, kind);
+                        i = matchEnd;
+                        continue;
+                    } else if (kind == Kind.KEYWORD && keywordHighlighting && matchEnd <= keywordsEnd) {
+                        if (!(inBracket || inParenthesis || inQuote)) {
+                            listener.token(i, matchEnd, kind);
+                        }
+                        i = matchEnd;
+                        continue;
+                    }
+                }
+            }
+            i++;
+        }
+    }
+
+    /**
+     * @return end of the longest token starting at {@code start} and ending on a word boundary, or -1
+     */
+    private int match(CharSequence s, int start, int end) {
+        Node node = root;
+        int result = -1;
+        for (int i = start; i < end; i++) {
+            node = node.child(s.charAt(i), false);
+            if (node == null) {
+                break;
+            }
+            if (node.kind != null && (i + 1 == end || !isWordChar(s.charAt(i + 1)))) {
+                result = i + 1;
+            }
+        }
+        return result;
+    }
+
+    @Nullable
+    private Kind kindAt(CharSequence s, int start, int end) {
+        Node node = root;
+        for (int i = start; i < end && node != null; i++) {
+            node = node.child(s.charAt(i), false);
+        }
+        return node == null ? null : node.kind;
+    }
+
+    private static int indexOf(CharSequence s, char c, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (s.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int lastIndexOf(CharSequence s, char c, int from, int to) {
+        for (int i = to - 1; i >= from; i--) {
+            if (s.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * regex \s
+     */
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    /**
+     * regex \w
+     */
+    private static boolean isWordChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+    }
+
+    private static class Node {
+        private Node[] children;
+        private Kind kind;
+
+        @Nullable
+        Node child(char c, boolean create) {
+            if (c >= 128) {
+                if (create) {
+                    throw new IllegalArgumentException("only ASCII tokens are supported");
+                }
+                return null;
+            }
+            if (children == null) {
+                if (!create) {
+                    return null;
+                }
+                children = new Node[128];
+            }
+            Node child = children[c];
+            if (child == null && create) {
+                child = new Node();
+                children[c] = child;
+            }
+            return child;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package org.plantuml.idea.lang.annotator;
 
+import com.intellij.codeInsight.daemon.DaemonCodeAnalyzer;
 import com.intellij.lang.annotation.AnnotationHolder;
 import com.intellij.lang.annotation.ExternalAnnotator;
 import com.intellij.openapi.diagnostic.Logger;
@@ -9,22 +10,19 @@ import com.intellij.openapi.editor.colors.TextAttributesKey;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiDocumentManager;
 import com.intellij.psi.PsiFile;
-import org.apache.commons.lang.StringUtils;
-import org.apache.commons.lang.math.IntRange;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
-import org.plantuml.idea.external.PlantUmlFacade;
 import org.plantuml.idea.lang.settings.PlantUmlSettings;
 import org.plantuml.idea.plantuml.SourceExtractor;
+import org.plantuml.idea.util.Utils;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.regex.Matcher;
 
 import static com.intellij.openapi.editor.DefaultLanguageHighlighterColors.METADATA;
-import static org.plantuml.idea.util.Utils.join;
-import static org.plantuml.idea.util.Utils.rangesInside;
 
 /**
  * Author: Eugene Steinberg
@@ -33,30 +31,78 @@ import static org.plantuml.idea.util.Utils.rangesInside;
 public class PlantUmlExternalAnnotator extends ExternalAnnotator<PlantUmlExternalAnnotator.Info, FileAnnotationResult> {
     private static final Logger logger = Logger.getInstance(PlantUmlExternalAnnotator.class);
     private PlantUmlSettings plantUmlSettings;
+    private final SourceAnnotationCache cache = new SourceAnnotationCache();
+    private final SyntaxCheckExecutor syntaxCheckExecutor;
+    /**
+     * null for the setting
+     */
+    @Nullable
+    private final Integer syntaxCheckTimeout;
 
     public PlantUmlExternalAnnotator() {
+        this(new SyntaxCheckExecutor(), Utils.isUnitTest() ? 0 : null);
+    }
+
+    PlantUmlExternalAnnotator(SyntaxCheckExecutor syntaxCheckExecutor, @Nullable Integer syntaxCheckTimeout) {
         plantUmlSettings = PlantUmlSettings.getInstance();
+        this.syntaxCheckExecutor = syntaxCheckExecutor;
+        this.syntaxCheckTimeout = syntaxCheckTimeout;
     }
 
     public static class Info {
 
         private final String text;
         private final VirtualFile virtualFile;
+        @Nullable
+        private final Map<Integer, String> sources;
+        @Nullable
+        private PsiFile psiFile;
+        @Nullable
+        private Document document;
+        private long modificationStamp;
 
         public Info(String text, VirtualFile virtualFile) {
+            this(text, virtualFile, null);
+        }
+
+        public Info(String text, VirtualFile virtualFile, @Nullable Map<Integer, String> sources) {
             this.text = text;
             this.virtualFile = virtualFile;
+            this.sources = sources;
         }
 
         public Info(PsiFile file) {
             this(file.getText(), file.getVirtualFile());
         }
+
+        boolean documentChanged() {
+            return document != null && document.getModificationStamp() != modificationStamp;
+        }
+
+        /**
+         * for a syntax check which finished after the pass gave up on it
+         */
+        void restartHighlighting() {
+            if (psiFile != null && psiFile.isValid() && !psiFile.getProject().isDisposed() && !documentChanged()) {
+                DaemonCodeAnalyzer.getInstance(psiFile.getProject()).restart(psiFile);
+            }
+        }
     }
 
     @Nullable
     @Override
     public Info collectInformation(@NotNull PsiFile file) {
-        return new Info(file.getText(), file.getVirtualFile());
+        PsiDocumentManager psiDocumentManager = PsiDocumentManager.getInstance(file.getProject());
+        Document document = psiDocumentManager.getDocument(file);
+        Map<Integer, String> sources = null;
+        if (document != null && psiDocumentManager.isCommitted(document)) {
+            sources = SourceExtractor.extractSources(document);
+        }
+        Info info = new Info(file.getText(), file.getVirtualFile(), sources);
+        info.psiFile = file;
+        info.document = document;
+        info.modificationStamp = document == null ? 0 : document.getModificationStamp();
+        return info;
     }
 
     @Nullable
@@ -72,95 +118,69 @@ public class PlantUmlExternalAnnotator extends ExternalAnnotator<PlantUmlExterna
         if (plantUmlSettings.isErrorAnnotationEnabled() || plantUmlSettings.isKeywordHighlighting()) {
             String text = file.text;
 
-            Map<Integer, String> sources = SourceExtractor.extractSources(text);
+            Map<Integer, String> sources = file.sources != null ? file.sources : SourceExtractor.extractSources(text);
+            SourceAnnotationCache.Pass pass = cache.newPass(file.virtualFile);
+            int timeout = syntaxCheckTimeout != null ? syntaxCheckTimeout : plantUmlSettings.getSyntaxCheckTimeoutAsInt();
 
             for (Map.Entry<Integer, String> sourceData : sources.entrySet()) {
                 Integer sourceOffset = sourceData.getKey();
-                SourceAnnotationResult sourceAnnotationResult = new SourceAnnotationResult(sourceOffset);
                 String source = sourceData.getValue();
 
+                SourceAnnotationCache.BlockKey key = pass.key(source);
+                SourceAnnotationResult cached = pass.get(key, sourceOffset);
+                if (cached != null) {
+                    result.add(cached);
+                    continue;
+                }
+
+                SourceAnnotationResult sourceAnnotationResult = new SourceAnnotationResult(sourceOffset);
+                boolean stale = false;
                 if (plantUmlSettings.isErrorAnnotationEnabled()) {
-                    sourceAnnotationResult.addAll(PlantUmlFacade.get().annotateSyntaxErrors(source, file.virtualFile));
+                    Collection<SourceAnnotation> errors = syntaxCheckExecutor.check(pass.getPath(), key, source, file.virtualFile, timeout,
+                            file::documentChanged, file::restartHighlighting);
+                    if (errors == null) {
+                        stale = true;
+                        sourceAnnotationResult.addAll(pass.staleErrors());
+                    } else {
+                        sourceAnnotationResult.addAll(errors);
+                    }
                     List<SyntaxHighlightAnnotation> blockComments = annotateBlockComments(source);
                     sourceAnnotationResult.addBlockComments(blockComments);
                 }
 
                 annotateByLine(sourceAnnotationResult, source);
 
+                if (stale) {
+                    pass.putStale(sourceAnnotationResult);
+                } else {
+                    pass.put(key, sourceAnnotationResult);
+                }
                 result.add(sourceAnnotationResult);
             }
+            pass.finish();
+            syntaxCheckExecutor.retain(pass.getPath(), pass.getKeys());
         }
         return result;
     }
 
     public void annotateByLine(SourceAnnotationResult result, String source) {
-        Matcher keywords = LanguagePatternHolder.INSTANCE.keywordsPattern.matcher("");
-        Matcher keywords2 = LanguagePatternHolder.INSTANCE.keywords2Pattern.matcher("");
-        Matcher types = LanguagePatternHolder.INSTANCE.typesPattern.matcher("");
-        Matcher pluginSettings = LanguagePatternHolder.INSTANCE.pluginSettingsPattern.matcher("");
-        Matcher preproc = LanguagePatternHolder.INSTANCE.preprocPattern.matcher("");
-        Matcher tags = LanguagePatternHolder.INSTANCE.tagsPattern.matcher("");
-        Matcher commentMatcher = LanguagePatternHolder.INSTANCE.lineCommentPattern.matcher("");
-
-
-        String[] strings = StringUtils.splitPreserveAllTokens(source, "\n");
-        int offset = 0;
-        for (String line : strings) {
-            commentMatcher.reset(line);
-            if (commentMatcher.find()) {
-                SyntaxHighlightAnnotation lineComment = new SyntaxHighlightAnnotation(offset + commentMatcher.start(), offset + commentMatcher.end(), DefaultLanguageHighlighterColors.LINE_COMMENT);
-                result.addWithBlockCommentCheck(lineComment);
-            } else {
-                if (plantUmlSettings.isKeywordHighlighting()) {
-                    highlightKeywords(result, keywords, types, keywords2, offset, line);
-                }
-                annotate(result, line, offset, null, DefaultLanguageHighlighterColors.KEYWORD, pluginSettings);
-                annotate(result, line, offset, null, DefaultLanguageHighlighterColors.METADATA, preproc);
-                annotate(result, line, offset, null, METADATA, tags);
-            }
-
-            offset += line.length() + 1;
-        }
-    }
-
-    private void highlightKeywords(SourceAnnotationResult result, Matcher keywords, Matcher types, Matcher keywords2, int offset, String line) {
-        int i = line.indexOf(":");  //it seems no keywords are after :
-        if (i > 0) {
-            line = line.substring(0, i);
-        }
-        //not reliable when mixed braces ([)...(]), but it don't need to be
-        List<IntRange> excludedRanges = join(rangesInside(line, "[", "]"), rangesInside(line, "(", ")"));
-        excludedRanges = join(excludedRanges, rangesInside(line, "\"", "\""));
-
-        annotate(result, line, offset, excludedRanges, DefaultLanguageHighlighterColors.KEYWORD, keywords);
-        annotate(result, line, offset, excludedRanges, DefaultLanguageHighlighterColors.KEYWORD, keywords2);
-        annotate(result, line, offset, excludedRanges, DefaultLanguageHighlighterColors.KEYWORD, types);
+        KeywordScanner.INSTANCE.scan(source, plantUmlSettings.isKeywordHighlighting(), (start, end, kind) -> {
+            result.addWithBlockCommentCheck(new SyntaxHighlightAnnotation(start, end, textAttributesKey(kind)));
+        });
     }
 
-    private void annotate(SourceAnnotationResult result, String line, int offset, List<IntRange> excludedRanges, TextAttributesKey textAttributesKey, Matcher matcher) {
-        matcher.reset(line);
-
-        while (matcher.find()) {
-            if (isExcluded(excludedRanges, matcher.start())) {
-                continue;
-            }
-            SyntaxHighlightAnnotation a = new SyntaxHighlightAnnotation(offset + matcher.start(), offset + matcher.end(), textAttributesKey);
-            result.addWithBlockCommentCheck(a);
-        }
-    }
-
-    private boolean isExcluded(List<IntRange> excludedRanges, int start) {
-        if (excludedRanges != null) {
-            for (IntRange excludedRange : excludedRanges) {
-                if (excludedRange.containsInteger(start)) {
-                    return true;
-                }
-            }
+    private static TextAttributesKey textAttributesKey(KeywordScanner.Kind kind) {
+        switch (kind) {
+            case LINE_COMMENT:
+                return DefaultLanguageHighlighterColors.LINE_COMMENT;
+            case PREPROC:
+            case TAG:
+                return METADATA;
+            default:
+                return DefaultLanguageHighlighterColors.KEYWORD;
         }
-        return false;
     }
 
-
     private List<SyntaxHighlightAnnotation> annotateBlockComments(String source) {
         List<SyntaxHighlightAnnotation> result = new ArrayList<>();
 
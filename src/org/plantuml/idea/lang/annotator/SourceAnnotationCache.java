@@ -0,0 +1,214 @@
+package org.plantuml.idea.lang.annotator;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.vfs.VirtualFile;
+import org.apache.commons.lang.StringUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.plantuml.idea.lang.settings.PlantUmlSettings;
+import org.plantuml.idea.util.UIUtils;
+import org.plantuml.idea.util.Utils;
+
+import java.io.File;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps {@link SourceAnnotationResult}s of the last annotation pass per file, so that only changed diagram blocks
+ * are checked again. Annotations are relative to the block start, so a cached result is reused with a new offset.
+ * <p>
+ * Syntax errors are also kept by block index, to be shown as stale when the check of a changed block times out.
+ */
+public class SourceAnnotationCache {
+    private static final Logger LOG = Logger.getInstance(SourceAnnotationCache.class);
+
+    private static final int MAX_FILES = 20;
+    /**
+     * the same as for inlining unsaved includes
+     */
+    private static final int MAX_DEPTH = 20;
+    private static final Pattern INCLUDE_PATTERN = Pattern.compile("^\\s*!include(?:_many|_once|sub)?\\s+(.+?)\\s*$", Pattern.MULTILINE);
+
+    private final Map<String, FileResults> files = new LinkedHashMap<String, FileResults>(MAX_FILES + 1, 1, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, FileResults> eldest) {
+            return size() > MAX_FILES;
+        }
+    };
+
+    public Pass newPass(@Nullable VirtualFile virtualFile) {
+        String path = virtualFile == null ? "" : virtualFile.getPath();
+        FileResults previous;
+        synchronized (files) {
+            previous = files.get(path);
+        }
+        return new Pass(path, virtualFile, previous);
+    }
+
+    private static class FileResults {
+        private final Map<BlockKey, SourceAnnotationResult> byKey = new HashMap<>();
+        private final List<List<ErrorSourceAnnotation>> errorsByIndex = new ArrayList<>();
+    }
+
+    public class Pass {
+        private final String path;
+        @Nullable
+        private final VirtualFile virtualFile;
+        @Nullable
+        private final FileResults previous;
+        private final FileResults current = new FileResults();
+        private final Set<BlockKey> keys = new HashSet<>();
+        private final PlantUmlSettings settings = PlantUmlSettings.getInstance();
+        private int reused;
+        private int stale;
+
+        private Pass(String path, @Nullable VirtualFile virtualFile, @Nullable FileResults previous) {
+            this.path = path;
+            this.virtualFile = virtualFile;
+            this.previous = previous;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * keys of all blocks of this pass
+         */
+        public Set<BlockKey> getKeys() {
+            return keys;
+        }
+
+        public BlockKey key(String source) {
+            return new BlockKey(source, includesFingerprint(source, UIUtils.getParent(virtualFile)), settings.isErrorAnnotationEnabled(), settings.isKeywordHighlighting(), settings.isRemoteRendering());
+        }
+
+        @Nullable
+        public SourceAnnotationResult get(BlockKey key, int sourceOffset) {
+            keys.add(key);
+            SourceAnnotationResult cached = previous == null ? null : previous.byKey.get(key);
+            if (cached == null) {
+                return null;
+            }
+            reused++;
+            put(key, cached);
+            return cached.withSourceOffset(sourceOffset);
+        }
+
+        public void put(BlockKey key, SourceAnnotationResult result) {
+            current.byKey.put(key, result);
+            current.errorsByIndex.add(errors(result));
+        }
+
+        /**
+         * For a result with stale errors, it is not reused by the next pass.
+         */
+        public void putStale(SourceAnnotationResult result) {
+            stale++;
+            current.errorsByIndex.add(errors(result));
+        }
+
+        /**
+         * @return errors of the block with the same index in the previous pass
+         */
+        public List<ErrorSourceAnnotation> staleErrors() {
+            int index = current.errorsByIndex.size();
+            if (previous == null || index >= previous.errorsByIndex.size()) {
+                return Collections.emptyList();
+            }
+            List<ErrorSourceAnnotation> result = new ArrayList<>();
+            for (ErrorSourceAnnotation annotation : previous.errorsByIndex.get(index)) {
+                result.add(annotation.asStale());
+            }
+            return result;
+        }
+
+        public void finish() {
+            synchronized (files) {
+                files.put(path, current);
+            }
+            LOG.debug("annotation pass done, blocks=", keys.size(), ", reused=", reused, ", stale=", stale);
+        }
+    }
+
+    private static List<ErrorSourceAnnotation> errors(SourceAnnotationResult result) {
+        List<ErrorSourceAnnotation> errors = new ArrayList<>();
+        for (SourceAnnotation annotation : result.getAnnotations()) {
+            if (annotation instanceof ErrorSourceAnnotation) {
+                errors.add((ErrorSourceAnnotation) annotation);
+            }
+        }
+        return errors;
+    }
+
+    /**
+     * Included files are resolved the same way as by PlantUML - relative to the including file, then from 'included
+     * paths'. Includes of included files are walked too, up to {@link #MAX_DEPTH} levels, each file once.
+     * Unresolvable includes (stdlib, urls) do not contribute.
+     */
+    @NotNull
+    static String includesFingerprint(String source, @Nullable File baseDir) {
+        if (!source.contains("!include")) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder();
+        appendIncludes(source, baseDir, sb, new HashSet<>(), 0);
+        return sb.toString();
+    }
+
+    private static void appendIncludes(CharSequence text, @Nullable File baseDir, StringBuilder sb, Set<File> visited, int depth) {
+        Matcher matcher = INCLUDE_PATTERN.matcher(text);
+        while (matcher.find()) {
+            String path = StringUtils.strip(matcher.group(1), "\"");
+            if (path.startsWith("<") || path.contains("://")) {
+                continue;
+            }
+            path = StringUtils.substringBefore(path, "!");
+            File file = Utils.resolveIncludedFile(baseDir, path);
+            if (file == null || !visited.add(file.getAbsoluteFile().toPath().normalize().toFile())) {
+                continue;
+            }
+            sb.append(file.getPath()).append(':').append(file.lastModified()).append(':').append(Utils.documentModificationStamp(file)).append(';');
+            if (depth < MAX_DEPTH) {
+                CharSequence included = Utils.documentOrFileText(file);
+                if (included != null && included.toString().contains("!include")) {
+                    appendIncludes(included, file.getAbsoluteFile().getParentFile(), sb, visited, depth + 1);
+                }
+            }
+        }
+    }
+
+    public static class BlockKey {
+        private final String source;
+        private final String includes;
+        private final boolean errorAnnotation;
+        private final boolean keywordHighlighting;
+        private final boolean remoteRendering;
+
+        BlockKey(String source, String includes, boolean errorAnnotation, boolean keywordHighlighting, boolean remoteRendering) {
+            this.source = source;
+            this.includes = includes;
+            this.errorAnnotation = errorAnnotation;
+            this.keywordHighlighting = keywordHighlighting;
+            this.remoteRendering = remoteRendering;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            BlockKey blockKey = (BlockKey) o;
+            return errorAnnotation == blockKey.errorAnnotation
+                    && keywordHighlighting == blockKey.keywordHighlighting
+                    && remoteRendering == blockKey.remoteRendering
+                    && source.equals(blockKey.source)
+                    && includes.equals(blockKey.includes);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(source, includes, errorAnnotation, keywordHighlighting, remoteRendering);
+        }
+    }
+}
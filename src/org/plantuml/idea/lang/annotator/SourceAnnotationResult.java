@@ -14,11 +14,32 @@ import java.util.List;
 public class SourceAnnotationResult {
     private int sourceOffset;
 
-    private final Collection<SourceAnnotation> annotations = new ArrayList<SourceAnnotation>();
+    private final Collection<SourceAnnotation> annotations;
     private List<SyntaxHighlightAnnotation> blockComments;
 
     public SourceAnnotationResult(int sourceOffset) {
         this.sourceOffset = sourceOffset;
+        this.annotations = new ArrayList<SourceAnnotation>();
+    }
+
+    private SourceAnnotationResult(int sourceOffset, SourceAnnotationResult result) {
+        this.sourceOffset = sourceOffset;
+        this.annotations = result.annotations;
+        this.blockComments = result.blockComments;
+    }
+
+    /**
+     * annotations are relative to the source, so they can be shared with a moved source
+     */
+    public SourceAnnotationResult withSourceOffset(int sourceOffset) {
+        if (this.sourceOffset == sourceOffset) {
+            return this;
+        }
+        return new SourceAnnotationResult(sourceOffset, this);
+    }
+
+    public int getSourceOffset() {
+        return sourceOffset;
     }
 
     public void addAll(Collection<? extends SourceAnnotation> sourceAnnotations) {
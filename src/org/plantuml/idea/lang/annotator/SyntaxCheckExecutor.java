@@ -0,0 +1,195 @@
+package org.plantuml.idea.lang.annotator;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import org.jetbrains.annotations.Nullable;
+import org.plantuml.idea.external.PlantUmlFacade;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.BiFunction;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Runs PlantUML syntax checks on pooled threads, so that the annotator can stop waiting for them.
+ * <p>
+ * PlantUML can not be cancelled cooperatively, the waiting annotator polls instead:
+ * <ul>
+ * <li>a cancelled progress indicator or a changed document cancels the check, interrupting PlantUML</li>
+ * <li>an exceeded time budget leaves the check running, its result is picked up by the next pass for the same
+ * block, which is requested when the check finishes</li>
+ * </ul>
+ */
+public class SyntaxCheckExecutor {
+    private static final Logger LOG = Logger.getInstance(SyntaxCheckExecutor.class);
+    private static final long POLL_MILLIS = 10;
+
+    private final Map<String, Map<SourceAnnotationCache.BlockKey, Check>> checks = new HashMap<>();
+    private final BiFunction<String, VirtualFile, Collection<SourceAnnotation>> checker;
+    private final ExecutorService executor;
+    private final Consumer<Runnable> invokeLater;
+
+    public SyntaxCheckExecutor() {
+        this((source, virtualFile) -> PlantUmlFacade.get().annotateSyntaxErrors(source, virtualFile),
+                AppExecutorUtil.getAppExecutorService(),
+                runnable -> ApplicationManager.getApplication().invokeLater(runnable));
+    }
+
+    /**
+     * @param checker     syntax check of a block
+     * @param executor    runs the checks
+     * @param invokeLater runs the late result callbacks
+     */
+    SyntaxCheckExecutor(BiFunction<String, VirtualFile, Collection<SourceAnnotation>> checker, ExecutorService executor, Consumer<Runnable> invokeLater) {
+        this.checker = checker;
+        this.executor = executor;
+        this.invokeLater = invokeLater;
+    }
+
+    /**
+     * @param timeoutMillis 0 for no limit
+     * @param onLateResult  called on the EDT when a timed out check finishes
+     * @return null when the time budget ran out
+     * @throws ProcessCanceledException when the indicator is cancelled or the document changed
+     */
+    @Nullable
+    public Collection<SourceAnnotation> check(String path, SourceAnnotationCache.BlockKey key, String source, @Nullable VirtualFile virtualFile,
+                                              long timeoutMillis, BooleanSupplier documentChanged, Runnable onLateResult) {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        Check check;
+        synchronized (checks) {
+            check = checks.computeIfAbsent(path, p -> new HashMap<>()).get(key);
+            if (check == null) {
+                check = new Check(source, virtualFile);
+                check.future = executor.submit(check);
+                checks.get(path).put(key, check);
+            }
+        }
+
+        while (true) {
+            try {
+                ProgressManager.checkCanceled();
+                if (documentChanged.getAsBoolean()) {
+                    LOG.debug("document changed, cancelling syntax check");
+                    throw new ProcessCanceledException();
+                }
+            } catch (ProcessCanceledException e) {
+                cancel(path, key, check);
+                throw e;
+            }
+            try {
+                Collection<SourceAnnotation> result = check.future.get(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                remove(path, key, check);
+                return result;
+            } catch (TimeoutException e) {
+                if (timeoutMillis > 0 && System.currentTimeMillis() > deadline) {
+                    LOG.debug("syntax check timed out after ", timeoutMillis, "ms");
+                    check.setOnLateResult(onLateResult);
+                    return null;
+                }
+            } catch (InterruptedException | CancellationException e) {
+                cancel(path, key, check);
+                throw new ProcessCanceledException(e);
+            } catch (ExecutionException e) {
+                remove(path, key, check);
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new RuntimeException(cause);
+            }
+        }
+    }
+
+    /**
+     * Cancels checks of blocks which are not in the file anymore.
+     */
+    public void retain(String path, Set<SourceAnnotationCache.BlockKey> keys) {
+        List<Check> obsolete = new ArrayList<>();
+        synchronized (checks) {
+            Map<SourceAnnotationCache.BlockKey, Check> fileChecks = checks.get(path);
+            if (fileChecks == null) {
+                return;
+            }
+            for (Iterator<Map.Entry<SourceAnnotationCache.BlockKey, Check>> iterator = fileChecks.entrySet().iterator(); iterator.hasNext(); ) {
+                Map.Entry<SourceAnnotationCache.BlockKey, Check> entry = iterator.next();
+                if (!keys.contains(entry.getKey())) {
+                    obsolete.add(entry.getValue());
+                    iterator.remove();
+                }
+            }
+            if (fileChecks.isEmpty()) {
+                checks.remove(path);
+            }
+        }
+        for (Check check : obsolete) {
+            check.future.cancel(true);
+        }
+    }
+
+    private void cancel(String path, SourceAnnotationCache.BlockKey key, Check check) {
+        remove(path, key, check);
+        check.future.cancel(true);
+    }
+
+    private void remove(String path, SourceAnnotationCache.BlockKey key, Check check) {
+        synchronized (checks) {
+            Map<SourceAnnotationCache.BlockKey, Check> fileChecks = checks.get(path);
+            if (fileChecks != null && fileChecks.get(key) == check) {
+                fileChecks.remove(key);
+                if (fileChecks.isEmpty()) {
+                    checks.remove(path);
+                }
+            }
+        }
+    }
+
+    private class Check implements Callable<Collection<SourceAnnotation>> {
+        private final String source;
+        @Nullable
+        private final VirtualFile virtualFile;
+        private Future<Collection<SourceAnnotation>> future;
+        private Runnable onLateResult;
+        private boolean done;
+
+        Check(String source, @Nullable VirtualFile virtualFile) {
+            this.source = source;
+            this.virtualFile = virtualFile;
+        }
+
+        @Override
+        public Collection<SourceAnnotation> call() {
+            long start = System.currentTimeMillis();
+            try {
+                Collection<SourceAnnotation> result = checker.apply(source, virtualFile);
+                return result == null ? Collections.emptyList() : result;
+            } finally {
+                LOG.debug("syntax check done in ", System.currentTimeMillis() - start, "ms");
+                Runnable runnable;
+                synchronized (this) {
+                    done = true;
+                    runnable = onLateResult;
+                }
+                if (runnable != null && !Thread.currentThread().isInterrupted()) {
+                    invokeLater.accept(runnable);
+                }
+            }
+        }
+
+        void setOnLateResult(Runnable onLateResult) {
+            boolean runNow;
+            synchronized (this) {
+                this.onLateResult = onLateResult;
+                runNow = done;
+            }
+            if (runNow) {
+                invokeLater.accept(onLateResult);
+            }
+        }
+    }
+}
@@ -15,6 +15,7 @@ import org.apache.commons.lang.builder.EqualsBuilder;
 import org.apache.commons.lang.builder.HashCodeBuilder;
 import org.apache.http.util.TextUtils;
 import org.jetbrains.annotations.Nullable;
+import org.plantuml.idea.external.SharedRenderServer;
 import org.plantuml.idea.plantuml.ImageFormat;
 import org.plantuml.idea.toolwindow.PlantUmlToolWindow;
 import org.plantuml.idea.util.UIUtils;
@@ -38,6 +39,7 @@ public class PlantUmlSettings implements PersistentStateComponent<PlantUmlSettin
 
     private static final int CACHE_SIZE_DEFAULT_VALUE = 5;
     private static final int RENDER_DELAY_DEFAULT_VALUE = 100;
+    private static final int SYNTAX_CHECK_TIMEOUT_DEFAULT_VALUE = 1000;
     private static final int SVG_SIZE = 16384;
     public static final String DEFAULT_SERVER = "http://www.plantuml.com/plantuml";
 
@@ -46,6 +48,7 @@ public class PlantUmlSettings implements PersistentStateComponent<PlantUmlSettin
     private boolean autoHide = true;
     private String renderDelay = String.valueOf(RENDER_DELAY_DEFAULT_VALUE);
     private String cacheSize = String.valueOf(CACHE_SIZE_DEFAULT_VALUE);
+    private String syntaxCheckTimeout = String.valueOf(SYNTAX_CHECK_TIMEOUT_DEFAULT_VALUE);
     private boolean autoRender = true;
     private boolean autoComplete = true;
     private boolean usePreferentiallyGRAPHIZ_DOT = false;
@@ -80,6 +83,7 @@ public class PlantUmlSettings implements PersistentStateComponent<PlantUmlSettin
     private String serverPrefix = DEFAULT_SERVER;
     private boolean remoteRendering;
     private boolean useProxy;
+    private boolean sharedRenderServer;
     private String serverClipboardLinkType = "uml";
 
     private boolean rememberLastExportDir;
@@ -197,6 +201,18 @@ public class PlantUmlSettings implements PersistentStateComponent<PlantUmlSettin
         this.renderDelay = String.valueOf(Math.max(0, Utils.asInt(renderDelay, RENDER_DELAY_DEFAULT_VALUE)));
     }
 
+    public String getSyntaxCheckTimeout() {
+        return syntaxCheckTimeout;
+    }
+
+    public int getSyntaxCheckTimeoutAsInt() {
+        return Utils.asInt(syntaxCheckTimeout, SYNTAX_CHECK_TIMEOUT_DEFAULT_VALUE);
+    }
+
+    public void setSyntaxCheckTimeout(String syntaxCheckTimeout) {
+        this.syntaxCheckTimeout = String.valueOf(Math.max(0, Utils.asInt(syntaxCheckTimeout, SYNTAX_CHECK_TIMEOUT_DEFAULT_VALUE)));
+    }
+
     public void setAutoRender(boolean autoRender) {
         this.autoRender = autoRender;
     }
@@ -252,6 +268,7 @@ public class PlantUmlSettings implements PersistentStateComponent<PlantUmlSettin
     }
 
     public void applyState() {
+        SharedRenderServer.settingsChanged();
         for (Project project : ProjectManager.getInstance().getOpenProjects()) {
             PlantUmlToolWindow toolWindow = UIUtils.getPlantUmlToolWindow(project);
             if (toolWindow != null) {
@@ -420,17 +437,34 @@ public class PlantUmlSettings implements PersistentStateComponent<PlantUmlSettin
         this.svgPreviewScaling = svgPreviewScaling;
     }
 
+    /**
+     * @return server prefixes separated by a space
+     */
     public String getServerPrefix() {
-        if (TextUtils.isBlank(serverPrefix)) {
-            serverPrefix = DEFAULT_SERVER;
-        }
-        if (!serverPrefix.startsWith("http")) {
-            serverPrefix = "http://" + serverPrefix;
+        serverPrefix = String.join(" ", getServerPrefixes());
+        return serverPrefix;
+    }
+
+    /**
+     * The remote rendering fails over to the next servers, the first one is used for links.
+     */
+    public List<String> getServerPrefixes() {
+        List<String> result = new ArrayList<>();
+        if (!TextUtils.isBlank(serverPrefix)) {
+            for (String prefix : serverPrefix.trim().split("[\\s,;]+")) {
+                if (!prefix.startsWith("http")) {
+                    prefix = "http://" + prefix;
+                }
+                if (prefix.endsWith("/")) {
+                    prefix = prefix.substring(0, prefix.length() - 1);
+                }
+                result.add(prefix);
+            }
         }
-        if (serverPrefix.endsWith("/")) {
-            serverPrefix = serverPrefix.substring(0, serverPrefix.length() - 1);
+        if (result.isEmpty()) {
+            result.add(DEFAULT_SERVER);
         }
-        return serverPrefix;
+        return result;
     }
 
     public void setServerPrefix(final String serverPrefix) {
@@ -453,6 +487,14 @@ public class PlantUmlSettings implements PersistentStateComponent<PlantUmlSettin
         this.useProxy = useProxy;
     }
 
+    public boolean isSharedRenderServer() {
+        return sharedRenderServer;
+    }
+
+    public void setSharedRenderServer(final boolean sharedRenderServer) {
+        this.sharedRenderServer = sharedRenderServer;
+    }
+
     public String getServerClipboardLinkType() {
         return serverClipboardLinkType;
     }
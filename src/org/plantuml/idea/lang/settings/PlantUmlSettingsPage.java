@@ -40,6 +40,7 @@ public class PlantUmlSettingsPage implements Configurable {
     private JButton textFieldDotExecutableBrowse;
     private JTextField renderDelay;
     private JTextField cacheSize;
+    private JTextField syntaxCheckTimeout;
     private JCheckBox renderLinksPng;
     private JCheckBox usePreferentiallyGRAPHIZ_DOT;
     private JTextField encoding;
@@ -70,6 +71,7 @@ public class PlantUmlSettingsPage implements Configurable {
     private JTextField serverUrl;
     private JCheckBox remoteRendering;
     private JCheckBox useProxy;
+    private JCheckBox sharedRenderServer;
     private JButton reset;
     private JTextField clipboardLinkType;
     private JLabel includePathsL1;
@@ -154,6 +156,7 @@ public class PlantUmlSettingsPage implements Configurable {
         DialogUtils.disableByAny(new JComponent[]{renderLinksPng}, displaySvg);
         DialogUtils.disableByAny(new JComponent[]{syntaxCheck, textFieldDotExecutableL, textFieldDotExecutableBrowse, plantumlLimitSizeLabel, configL1, configL2, configL3, configExample, includePathsL1, includePathsL2, includePathsL3, includePaths, config, PLANTUML_LIMIT_SIZE, usePreferentiallyGRAPHIZ_DOT, textFieldDotExecutable,}, remoteRendering);
         DialogUtils.enabledByAny(new JComponent[]{useProxy}, remoteRendering);
+        DialogUtils.disableByAny(new JComponent[]{sharedRenderServer}, remoteRendering);
         DialogUtils.enabledByAny(new JComponent[]{svgPreviewScaling, svgPreviewLimitLabel, maxSvgSize}, displaySvg);
         DialogUtils.enabledByAny(new JComponent[]{highlightInImages, linkOpensSearchBar, showUrlLinksBorder}, displaySvg, renderLinksPng);
     }
@@ -256,6 +259,7 @@ public class PlantUmlSettingsPage implements Configurable {
         switchToBundledAfterUpdate.setSelected(data.isSwitchToBundledAfterUpdate());
         customPlantumlJar.setText(data.getCustomPlantumlJarPath());
         renderDelay.setText(data.getRenderDelay());
+        syntaxCheckTimeout.setText(data.getSyntaxCheckTimeout());
         cacheSize.setText(data.getCacheSize());
         PLANTUML_LIMIT_SIZE.setText(data.getPLANTUML_LIMIT_SIZE());
         maxSvgSize.setText(data.getMaxSvgSize());
@@ -275,6 +279,7 @@ public class PlantUmlSettingsPage implements Configurable {
         serverUrl.setText(data.getServerPrefix());
         remoteRendering.setSelected(data.isRemoteRendering());
         useProxy.setSelected(data.isUseProxy());
+        sharedRenderServer.setSelected(data.isSharedRenderServer());
         clipboardLinkType.setText(data.getServerClipboardLinkType());
     }
 
@@ -286,6 +291,7 @@ public class PlantUmlSettingsPage implements Configurable {
         data.setSwitchToBundledAfterUpdate(switchToBundledAfterUpdate.isSelected());
         data.setCustomPlantumlJarPath(customPlantumlJar.getText());
         data.setRenderDelay(renderDelay.getText());
+        data.setSyntaxCheckTimeout(syntaxCheckTimeout.getText());
         data.setCacheSize(cacheSize.getText());
         data.setPLANTUML_LIMIT_SIZE(PLANTUML_LIMIT_SIZE.getText());
         data.setMaxSvgSize(maxSvgSize.getText());
@@ -305,6 +311,7 @@ public class PlantUmlSettingsPage implements Configurable {
         data.setServerPrefix(serverUrl.getText());
         data.setRemoteRendering(remoteRendering.isSelected());
         data.setUseProxy(useProxy.isSelected());
+        data.setSharedRenderServer(sharedRenderServer.isSelected());
         data.setServerClipboardLinkType(clipboardLinkType.getText());
     }
 
@@ -321,6 +328,8 @@ public class PlantUmlSettingsPage implements Configurable {
             return true;
         if (renderDelay.getText() != null ? !renderDelay.getText().equals(data.getRenderDelay()) : data.getRenderDelay() != null)
             return true;
+        if (syntaxCheckTimeout.getText() != null ? !syntaxCheckTimeout.getText().equals(data.getSyntaxCheckTimeout()) : data.getSyntaxCheckTimeout() != null)
+            return true;
         if (cacheSize.getText() != null ? !cacheSize.getText().equals(data.getCacheSize()) : data.getCacheSize() != null)
             return true;
         if (PLANTUML_LIMIT_SIZE.getText() != null ? !PLANTUML_LIMIT_SIZE.getText().equals(data.getPLANTUML_LIMIT_SIZE()) : data.getPLANTUML_LIMIT_SIZE() != null)
@@ -345,6 +354,7 @@ public class PlantUmlSettingsPage implements Configurable {
             return true;
         if (remoteRendering.isSelected() != data.isRemoteRendering()) return true;
         if (useProxy.isSelected() != data.isUseProxy()) return true;
+        if (sharedRenderServer.isSelected() != data.isSharedRenderServer()) return true;
         if (clipboardLinkType.getText() != null ? !clipboardLinkType.getText().equals(data.getServerClipboardLinkType()) : data.getServerClipboardLinkType() != null)
             return true;
         return false;
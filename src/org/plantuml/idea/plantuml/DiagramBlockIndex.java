@@ -0,0 +1,392 @@
+package org.plantuml.idea.plantuml;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.event.DocumentEvent;
+import com.intellij.openapi.util.Key;
+import com.intellij.openapi.util.TextRange;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.plantuml.idea.lang.annotator.LanguageDescriptor.TAGS;
+
+/**
+ * Offsets of {@code @start...@end...} and {@code ```plantuml} blocks of a text, kept per {@link Document} and
+ * updated from document changes, so that the block under the caret is found by a binary search.
+ * <p>
+ * Blocks are the same as found by the former source regex:
+ * <ul>
+ * <li>a block starts at {@code @start<tag>} and ends after the first {@code @end<tag>}, or at the end of the text</li>
+ * <li>a block directly followed by another {@code @start<tag>} continues with it</li>
+ * <li>markdown block is the content between {@code ```plantuml} and the next {@code ```}</li>
+ * </ul>
+ * On a change, blocks ending before the change are kept, scanning restarts after them and stops as soon as
+ * a block starts at the shifted offset of an old block after the change.
+ */
+public class DiagramBlockIndex {
+    private static final Logger LOG = Logger.getInstance(DiagramBlockIndex.class);
+    private static final Key<DiagramBlockIndex> KEY = Key.create("PlantUML.DiagramBlockIndex");
+
+    private static final String START = "@start";
+    private static final String END = "@end";
+    private static final String MARKDOWN_START = "```plantuml";
+    private static final String MARKDOWN_END = "```";
+    private static final String[] TAG_LIST = TAGS.split("\\|");
+    /**
+     * the longest marker, text this far after a block end decides whether the block continues
+     */
+    private static final int MARGIN;
+
+    static {
+        int max = MARKDOWN_START.length();
+        for (String tag : TAG_LIST) {
+            max = Math.max(max, START.length() + tag.length());
+        }
+        MARGIN = max;
+    }
+
+    private List<Block> umlBlocks;
+    private List<Block> markdownBlocks;
+    private long modificationStamp;
+
+    DiagramBlockIndex(CharSequence text) {
+        rebuild(text);
+    }
+
+    @NotNull
+    public static synchronized DiagramBlockIndex getInstance(@NotNull Document document) {
+        DiagramBlockIndex index = document.getUserData(KEY);
+        if (index == null) {
+            index = new DiagramBlockIndex(document.getImmutableCharSequence());
+            index.modificationStamp = document.getModificationStamp();
+            document.putUserData(KEY, index);
+        }
+        return index;
+    }
+
+    /**
+     * Called for every document change, updates the index only if the document has one.
+     */
+    public static void documentChanged(@NotNull DocumentEvent event) {
+        DiagramBlockIndex index = event.getDocument().getUserData(KEY);
+        if (index != null) {
+            index.update(event);
+        }
+    }
+
+    private synchronized void update(DocumentEvent event) {
+        Document document = event.getDocument();
+        if (modificationStamp == event.getOldTimeStamp()) {
+            update(document.getImmutableCharSequence(), event.getOffset(), event.getOldLength(), event.getNewLength());
+        } else {
+            rebuild(document.getImmutableCharSequence());
+        }
+        modificationStamp = document.getModificationStamp();
+    }
+
+    private synchronized void ensureUpToDate(Document document) {
+        if (modificationStamp != document.getModificationStamp()) {
+            LOG.debug("missed a document change, rebuilding");
+            rebuild(document.getImmutableCharSequence());
+            modificationStamp = document.getModificationStamp();
+        }
+    }
+
+    /**
+     * @see SourceExtractor#extractSources(String)
+     */
+    @NotNull
+    public Map<Integer, String> getSources(@NotNull Document document) {
+        ensureUpToDate(document);
+        return getSources(document.getImmutableCharSequence());
+    }
+
+    /**
+     * @return source of the block containing the offset, comments not stripped
+     * @see SourceExtractor#extractSource(String, int)
+     */
+    @Nullable
+    public String getSource(@NotNull Document document, int offset) {
+        ensureUpToDate(document);
+        return getSource(document.getImmutableCharSequence(), offset);
+    }
+
+    /**
+     * @return range of the block containing the offset, the same offset in the range gives the same source
+     */
+    @Nullable
+    public TextRange getBlockRange(@NotNull Document document, int offset) {
+        ensureUpToDate(document);
+        return getBlockRange(document.getImmutableCharSequence(), offset);
+    }
+
+    synchronized void rebuild(CharSequence text) {
+        long start = System.currentTimeMillis();
+        umlBlocks = scan(text, 0, UML);
+        markdownBlocks = scan(text, 0, MARKDOWN);
+        LOG.debug("index rebuilt in ", System.currentTimeMillis() - start, "ms");
+    }
+
+    synchronized void update(CharSequence text, int offset, int oldLength, int newLength) {
+        umlBlocks = update(umlBlocks, UML, text, offset, oldLength, newLength);
+        markdownBlocks = update(markdownBlocks, MARKDOWN, text, offset, oldLength, newLength);
+    }
+
+    synchronized Map<Integer, String> getSources(CharSequence text) {
+        LinkedHashMap<Integer, String> result = new LinkedHashMap<>();
+        for (Block block : umlBlocks) {
+            result.put(block.start, block.getSource(text));
+        }
+        for (Block block : markdownBlocks) {
+            result.put(block.start, block.getSource(text));
+        }
+        return result;
+    }
+
+    @Nullable
+    synchronized String getSource(CharSequence text, int offset) {
+        Block block = find(text, offset);
+        return block == null ? null : block.getSource(text);
+    }
+
+    @Nullable
+    synchronized TextRange getBlockRange(CharSequence text, int offset) {
+        Block block = find(text, offset);
+        return block == null ? null : new TextRange(block.start, block.start + block.getSource(text).length());
+    }
+
+    @Nullable
+    private Block find(CharSequence text, int offset) {
+        Block block = find(umlBlocks, text, offset);
+        if (block == null) {
+            block = find(markdownBlocks, text, offset);
+        }
+        return block;
+    }
+
+    /**
+     * Blocks are sorted and do not overlap, but a wrapped markdown source is longer than its block,
+     * so the previous block can contain the offset too - and it would win.
+     */
+    @Nullable
+    private static Block find(List<Block> blocks, CharSequence text, int offset) {
+        int low = 0;
+        int high = blocks.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (blocks.get(mid).start <= offset) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        for (int i = Math.max(0, high - 1); i <= high; i++) {
+            Block block = blocks.get(i);
+            String source = block.getSource(text);
+            if (block.start <= offset && offset <= block.start + source.length()) {
+                return block;
+            }
+        }
+        return null;
+    }
+
+    private static List<Block> update(List<Block> blocks, Scanner scanner, CharSequence text, int offset, int oldLength, int newLength) {
+        int delta = newLength - oldLength;
+        int oldChangeEnd = offset + oldLength;
+        int newChangeEnd = offset + newLength;
+
+        int keep = 0;
+        while (keep < blocks.size() && blocks.get(keep).end + MARGIN < offset && !blocks.get(keep).dependsOnRest) {
+            keep++;
+        }
+        List<Block> result = new ArrayList<>(blocks.subList(0, keep));
+        int position = keep == 0 ? 0 : blocks.get(keep - 1).end;
+        int old = keep;
+
+        Block block;
+        while ((block = scanner.next(text, position)) != null) {
+            if (block.start >= newChangeEnd) {
+                while (old < blocks.size() && blocks.get(old).start + delta < block.start) {
+                    old++;
+                }
+                if (old < blocks.size() && blocks.get(old).start >= oldChangeEnd && blocks.get(old).start + delta == block.start) {
+                    for (int i = old; i < blocks.size(); i++) {
+                        result.add(blocks.get(i).shift(delta));
+                    }
+                    return result;
+                }
+            }
+            result.add(block);
+            position = block.end;
+        }
+        return result;
+    }
+
+    private static List<Block> scan(CharSequence text, int from, Scanner scanner) {
+        List<Block> result = new ArrayList<>();
+        Block block;
+        while ((block = scanner.next(text, from)) != null) {
+            result.add(block);
+            from = block.end;
+        }
+        return result;
+    }
+
+    private interface Scanner {
+        @Nullable
+        Block next(CharSequence text, int from);
+    }
+
+    private static final Scanner UML = (text, from) -> {
+        int start = indexOfStart(text, from);
+        if (start < 0) {
+            return null;
+        }
+        int end = start;
+        int tagEnd;
+        while ((tagEnd = tagEnd(text, end, START)) > 0) {
+            end = endOf(text, tagEnd);
+        }
+        return new Block(start, end, start, end, false, false);
+    };
+
+    private static final Scanner MARKDOWN = (text, from) -> {
+        int start = indexOf(text, MARKDOWN_START, from);
+        if (start < 0) {
+            return null;
+        }
+        Block block = null;
+        int position = start;
+        while (startsWith(text, position, MARKDOWN_START)) {
+            int contentStart = position + MARKDOWN_START.length();
+            int contentEnd = indexOf(text, MARKDOWN_END, contentStart);
+            if (contentEnd < 0) {
+                if (block != null) {
+                    block = block.dependingOnRest();
+                }
+                break;
+            }
+            position = contentEnd + MARKDOWN_END.length();
+            block = new Block(start, position, contentStart, contentEnd, true, false);
+        }
+        return block;
+    };
+
+    private static int indexOfStart(CharSequence text, int from) {
+        int i = from;
+        while ((i = indexOf(text, START, i)) >= 0) {
+            if (tagEnd(text, i, START) > 0) {
+                return i;
+            }
+            i++;
+        }
+        return -1;
+    }
+
+    /**
+     * @return end of the first {@code @end<tag>} after the offset, or the end of text the same as regex {@code $}
+     */
+    private static int endOf(CharSequence text, int from) {
+        int i = from;
+        while ((i = indexOf(text, END, i)) >= 0) {
+            int tagEnd = tagEnd(text, i, END);
+            if (tagEnd > 0) {
+                return tagEnd;
+            }
+            i++;
+        }
+        int length = text.length();
+        if (length >= from + 2 && text.charAt(length - 2) == '\r' && text.charAt(length - 1) == '\n') {
+            return length - 2;
+        }
+        if (length >= from + 1 && isLineTerminator(text.charAt(length - 1))) {
+            return length - 1;
+        }
+        return length;
+    }
+
+    private static boolean isLineTerminator(char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
+    private static int tagEnd(CharSequence text, int offset, String prefix) {
+        if (!startsWith(text, offset, prefix)) {
+            return -1;
+        }
+        int tagStart = offset + prefix.length();
+        for (String tag : TAG_LIST) {
+            if (startsWith(text, tagStart, tag)) {
+                return tagStart + tag.length();
+            }
+        }
+        return -1;
+    }
+
+    private static boolean startsWith(CharSequence text, int offset, String prefix) {
+        if (offset < 0 || offset + prefix.length() > text.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (text.charAt(offset + i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOf(CharSequence text, String s, int from) {
+        char first = s.charAt(0);
+        int max = text.length() - s.length();
+        for (int i = Math.max(from, 0); i <= max; i++) {
+            if (text.charAt(i) == first && startsWith(text, i, s)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static class Block {
+        private final int start;
+        private final int end;
+        private final int contentStart;
+        private final int contentEnd;
+        private final boolean markdown;
+        /**
+         * the block did not continue only because no closing mark follows anywhere
+         */
+        private final boolean dependsOnRest;
+
+        Block(int start, int end, int contentStart, int contentEnd, boolean markdown, boolean dependsOnRest) {
+            this.start = start;
+            this.end = end;
+            this.contentStart = contentStart;
+            this.contentEnd = contentEnd;
+            this.markdown = markdown;
+            this.dependsOnRest = dependsOnRest;
+        }
+
+        Block shift(int delta) {
+            if (delta == 0) {
+                return this;
+            }
+            return new Block(start + delta, end + delta, contentStart + delta, contentEnd + delta, markdown, dependsOnRest);
+        }
+
+        Block dependingOnRest() {
+            return new Block(start, end, contentStart, contentEnd, markdown, true);
+        }
+
+        String getSource(CharSequence text) {
+            String source = text.subSequence(contentStart, contentEnd).toString();
+            if (markdown && !source.trim().startsWith("@startuml")) {
+                source = "@startuml\n" + source + "\n@enduml";
+            }
+            return source;
+        }
+    }
+}
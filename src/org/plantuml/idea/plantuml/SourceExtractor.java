@@ -1,9 +1,8 @@
 package org.plantuml.idea.plantuml;
 
 import com.intellij.openapi.diagnostic.Logger;
-import org.plantuml.idea.lang.annotator.LanguagePatternHolder;
+import com.intellij.openapi.editor.Document;
 
-import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -16,6 +15,8 @@ public class SourceExtractor {
 
     public static final String TESTDOT = "@startuml\ntestdot\n@enduml";
 
+    public static final Pattern NEW_PAGE_PATTERN = Pattern.compile("\\n\\s*@?(?i)(newpage)(\\p{Blank}+[^\\n]+|\\p{Blank}*)(?=\\n)");
+
 
     /**
      * Extracts plantUML diagram source code from the given string starting from given offset
@@ -31,47 +32,40 @@ public class SourceExtractor {
      * no valid sourcePattern code was found
      */
     public static String extractSource(String text, int offset) {
-        Map<Integer, String> sources = extractSources(text);
-        String source = "";
-        for (Map.Entry<Integer, String> sourceData : sources.entrySet()) {
-            Integer sourceOffset = sourceData.getKey();
-            if (sourceOffset <= offset && offset <= sourceOffset + sourceData.getValue().length()) {
-                source = stripComments(sourceData.getValue());
-                break;
-            }
-        }
-        return source;
+        String source = new DiagramBlockIndex(text).getSource(text, offset);
+        return source == null ? "" : stripComments(source);
+    }
+
+    /**
+     * @see #extractSource(String, int)
+     */
+    public static String extractSource(Document document, int offset) {
+        String source = DiagramBlockIndex.getInstance(document).getSource(document, offset);
+        return source == null ? "" : stripComments(source);
     }
 
     public static Map<Integer, String> extractSources(String text) {
         long start = System.currentTimeMillis();
-        LinkedHashMap<Integer, String> result = new LinkedHashMap<Integer, String>();
-
-        if (text.contains("@start")) {
-
-            Matcher matcher = LanguagePatternHolder.INSTANCE.sourcePattern.matcher(text);
-
-            while (matcher.find()) {
-                result.put(matcher.start(), matcher.group());
-            }
-        }
+        Map<Integer, String> result = new DiagramBlockIndex(text).getSources(text);
+        LOG.debug("extractSources done in ", System.currentTimeMillis() - start, "ms");
+        return result;
+    }
 
-        if (text.contains("```plantuml")) {
-            Matcher matcher = LanguagePatternHolder.INSTANCE.sourcePatternMarkdown.matcher(text);
-
-            while (matcher.find()) {
-                String group = matcher.group(1);
-                group = group.substring(0, group.length() - 3);
-                if (!group.trim().startsWith("@startuml")) {
-                    group = "@startuml\n" + group + "\n@enduml";
-                }
-                result.put(matcher.start(), group);
-            }
+    /**
+     * @param stripComments strips the leading {@code *} of sources in block comments, like {@link #extractSource(String, int)}
+     */
+    public static Map<Integer, String> extractSources(String text, boolean stripComments) {
+        Map<Integer, String> result = extractSources(text);
+        if (stripComments) {
+            result.replaceAll((offset, source) -> stripComments(source));
         }
-        LOG.debug("extractSources done in ", System.currentTimeMillis() - start, "ms");
         return result;
     }
 
+    public static Map<Integer, String> extractSources(Document document) {
+        return DiagramBlockIndex.getInstance(document).getSources(document);
+    }
+
     private static Pattern sourceCommentPattern =
             Pattern.compile("^\\s*\\*\\s", Pattern.MULTILINE);
 
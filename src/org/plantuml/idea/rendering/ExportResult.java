@@ -0,0 +1,26 @@
+package org.plantuml.idea.rendering;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Files written by an export, and files included by the exported diagram.
+ */
+public class ExportResult {
+    private final List<File> outputFiles;
+    private final Collection<File> includedFiles;
+
+    public ExportResult(List<File> outputFiles, Collection<File> includedFiles) {
+        this.outputFiles = outputFiles;
+        this.includedFiles = includedFiles;
+    }
+
+    public List<File> getOutputFiles() {
+        return outputFiles;
+    }
+
+    public Collection<File> getIncludedFiles() {
+        return includedFiles;
+    }
+}
@@ -8,6 +8,7 @@ import org.apache.commons.lang.builder.ToStringStyle;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.plantuml.idea.plantuml.ImageFormat;
+import org.plantuml.idea.toolwindow.Zoom;
 import org.plantuml.idea.toolwindow.image.ImageContainerSvg;
 import org.plantuml.idea.toolwindow.image.svg.MyImageEditorImpl;
 import org.plantuml.idea.util.Utils;
@@ -155,6 +156,23 @@ public class ImageItem {
         return imageBytes;
     }
 
+    /**
+     * @param renderRequest the request this item was rendered by
+     * @return the image bytes when rendering this page again in the given format and zoom would produce the same,
+     * null when it has to be rendered
+     */
+    @Nullable
+    public byte[] getReusableImageBytes(RenderRequest renderRequest, ImageFormat format, Zoom zoom) {
+        if (renderingType != RenderingType.NORMAL || this.format != format || !hasImageBytes() || hasError()) {
+            return null;
+        }
+        int renderedZoom = format == ImageFormat.SVG && renderRequest.isDisableSvgZoom() ? 100 : renderRequest.getZoom().getScaledZoom();
+        if (renderedZoom != zoom.getScaledZoom()) {
+            return null;
+        }
+        return imageBytes;
+    }
+
     @Nullable
     public String getPageSource() {
         return pageSource;
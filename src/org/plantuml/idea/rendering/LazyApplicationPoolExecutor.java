@@ -3,6 +3,7 @@ package org.plantuml.idea.rendering;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.util.ConcurrencyUtil;
 import org.jetbrains.annotations.NotNull;
+import org.plantuml.idea.external.RemoteRenderer;
 import org.plantuml.idea.toolwindow.ExecutionStatusPanel;
 
 import java.util.concurrent.*;
@@ -61,6 +62,7 @@ public class LazyApplicationPoolExecutor {
         Delay delay = command.delay;
         logger.debug("#execute ", delay, " ", command);
         nextCommand = command;
+        RemoteRenderer.cancelStale(command.sourceFilePath, command.source, command.version);
 
         if (delay == Delay.RESET_DELAY) {
             setStartAfter();
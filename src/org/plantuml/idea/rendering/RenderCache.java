@@ -3,6 +3,8 @@ package org.plantuml.idea.rendering;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.fileEditor.FileDocumentManager;
 import com.intellij.openapi.vfs.VirtualFileManager;
+import org.jetbrains.annotations.Nullable;
+import org.plantuml.idea.plantuml.ImageFormat;
 import org.plantuml.idea.toolwindow.Zoom;
 
 import java.util.ArrayDeque;
@@ -76,6 +78,25 @@ public class RenderCache {
         return cacheItem;
     }
 
+    /**
+     * @return an item rendered from the same source and unchanged included files, holding the page in the format and zoom
+     */
+    @Nullable
+    public RenderCacheItem getItemWithImage(String sourceFilePath, String source, int page, ImageFormat format, Zoom zoom, FileDocumentManager fileDocumentManager, VirtualFileManager virtualFileManager) {
+        Iterator<RenderCacheItem> iterator = cacheItems.descendingIterator();
+        while (iterator.hasNext()) {
+            RenderCacheItem next = iterator.next();
+            if (next.getSourceFilePath().equals(sourceFilePath) && next.getSource().equals(source)) {
+                ImageItem imageItem = next.getImageItem(page);
+                if (imageItem != null && imageItem.getReusableImageBytes(next.getRenderRequest(), format, zoom) != null
+                        && !next.includedFilesChanged(fileDocumentManager, virtualFileManager)) {
+                    return next;
+                }
+            }
+        }
+        return null;
+    }
+
     public void addToCache(RenderCacheItem cacheItem) {
         if (cacheItems.size() > 0 && cacheItems.size() + 1 > maxCacheSize) {
             RenderCacheItem renderCacheItem = cacheItems.removeFirst();
@@ -117,7 +117,7 @@ public class RenderCacheItem {
                 if (virtualFile != null) {
                     document = fileDocumentManager.getDocument(virtualFile);
                 }
-                if (timestamp != null && isChanged(fileDocumentManager, file, timestamp, document)) {
+                if (timestamp != null && isChanged(fileDocumentManager, file, timestamp, virtualFile, document)) {
                     result = true;
                     break;
                 }
@@ -126,8 +126,15 @@ public class RenderCacheItem {
         return result;
     }
 
-    private static boolean isChanged(FileDocumentManager fileDocumentManager, File file, Long timestamp, Document document) {
-        return timestamp < file.lastModified() || (document != null && fileDocumentManager.isDocumentUnsaved(document));
+    private boolean isChanged(FileDocumentManager fileDocumentManager, File file, Long timestamp, VirtualFile virtualFile, Document document) {
+        if (timestamp < file.lastModified()) {
+            return true;
+        }
+        if (document == null || !fileDocumentManager.isDocumentUnsaved(document)) {
+            return false;
+        }
+        Long renderedStamp = renderResult.getUnsavedDocumentStamps().get(virtualFile.getPath());
+        return renderedStamp == null || renderedStamp != document.getModificationStamp();
     }
 
     public boolean isIncludedFile(@Nullable VirtualFile file) {
@@ -10,8 +10,10 @@ import org.plantuml.idea.lang.settings.PlantUmlSettings;
 import org.plantuml.idea.plantuml.ImageFormat;
 import org.plantuml.idea.toolwindow.ExecutionStatusPanel;
 import org.plantuml.idea.toolwindow.Zoom;
+import org.plantuml.idea.util.Utils;
 
 import java.util.List;
+import java.util.Map;
 
 import static org.plantuml.idea.util.Utils.logDuration;
 
@@ -69,7 +71,9 @@ public abstract class RenderCommand implements Runnable {
             final RenderRequest renderRequest = new RenderRequest(sourceFilePath, source, imageFormat, page, zoom, version, plantUmlSettings.isRenderLinks(), reason);
             renderRequest.disableSvgZoom();
             long s1 = System.currentTimeMillis();
+            Map<String, Long> unsavedDocumentStamps = Utils.unsavedDocumentStamps();
             final RenderResult result = PlantUmlFacade.get().render(renderRequest, cachedItem);
+            result.setUnsavedDocumentStamps(unsavedDocumentStamps);
             logger.debug("render ", (System.currentTimeMillis() - s1), "ms");
 
             long s2 = System.currentTimeMillis();
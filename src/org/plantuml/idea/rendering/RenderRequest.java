@@ -45,10 +45,16 @@ public class RenderRequest {
 
     public RenderRequest(@NotNull RenderRequest renderRequest,
                          @NotNull ImageFormat format) {
+        this(renderRequest, format, renderRequest.page);
+    }
+
+    public RenderRequest(@NotNull RenderRequest renderRequest,
+                         @NotNull ImageFormat format,
+                         int page) {
         this.sourceFilePath = renderRequest.sourceFilePath;
         this.source = renderRequest.source;
         this.format = format;
-        this.page = renderRequest.page;
+        this.page = page;
         this.zoom = renderRequest.zoom;
         this.useSettings = renderRequest.useSettings;
         this.version = null;
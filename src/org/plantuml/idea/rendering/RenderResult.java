@@ -23,6 +23,7 @@ public class RenderResult {
     private int updatedTitles;
     private int cached;
     private LinkedHashMap<File, Long> includedFiles = new LinkedHashMap<>();
+    private Map<String, Long> unsavedDocumentStamps = Collections.emptyMap();
 
     public RenderResult(RenderingType strategy, int totalPages) {
         this.strategy = strategy;
@@ -46,6 +47,17 @@ public class RenderResult {
         includedFiles.putAll(map);
     }
 
+    /**
+     * Unsaved documents as of the start of rendering, their content was used instead of the file on disk.
+     */
+    public Map<String, Long> getUnsavedDocumentStamps() {
+        return unsavedDocumentStamps;
+    }
+
+    public void setUnsavedDocumentStamps(Map<String, Long> unsavedDocumentStamps) {
+        this.unsavedDocumentStamps = unsavedDocumentStamps;
+    }
+
     public byte[] getFirstDiagramBytes() {
         for (ImageItem imageItem : imageItems) {
             if (TITLE_ONLY.equals(imageItem.getDescription())) {
@@ -70,7 +82,7 @@ public class RenderResult {
     }
 
     public boolean hasError() {
-        if (strategy == RenderingType.NORMAL) {
+        if (strategy == RenderingType.NORMAL || strategy == RenderingType.SHARED) {
             for (ImageItem imageItem : imageItems) {
                 if (imageItem.hasError()) return true;
             }
@@ -3,7 +3,11 @@ package org.plantuml.idea.rendering;
 public enum RenderingType {
     PARTIAL,
     NORMAL,
-    REMOTE;
+    REMOTE,
+    /**
+     * rendered by the shared render server of another IDE process, the same as {@link #NORMAL} otherwise
+     */
+    SHARED;
 
     public boolean renderingTypeChanged(RenderCacheItem cachedItem) {
         return cachedItem != null && cachedItem.getRenderResult().getStrategy() != this;
@@ -2,14 +2,18 @@ package org.plantuml.idea.toolwindow;
 
 import com.intellij.openapi.Disposable;
 import com.intellij.openapi.actionSystem.*;
+import com.intellij.openapi.application.ModalityState;
+import com.intellij.openapi.application.ReadAction;
 import com.intellij.openapi.components.ServiceManager;
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.editor.Editor;
 import com.intellij.openapi.fileEditor.FileDocumentManager;
 import com.intellij.openapi.fileEditor.FileEditorManager;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.Disposer;
 import com.intellij.openapi.util.LowMemoryWatcher;
+import com.intellij.openapi.util.TextRange;
 import com.intellij.openapi.vfs.LocalFileSystem;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.openapi.vfs.VirtualFileManager;
@@ -17,12 +21,16 @@ import com.intellij.openapi.wm.ToolWindow;
 import com.intellij.openapi.wm.WindowManager;
 import com.intellij.ui.components.JBScrollPane;
 import com.intellij.util.Alarm;
+import com.intellij.util.concurrency.AppExecutorUtil;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.plantuml.idea.action.NextPageAction;
 import org.plantuml.idea.action.SelectPageAction;
 import org.plantuml.idea.action.ZoomAction;
 import org.plantuml.idea.lang.settings.PlantUmlSettings;
+import org.plantuml.idea.plantuml.DiagramBlockIndex;
 import org.plantuml.idea.plantuml.ImageFormat;
+import org.plantuml.idea.plantuml.SourceExtractor;
 import org.plantuml.idea.rendering.*;
 import org.plantuml.idea.toolwindow.image.ImageContainer;
 import org.plantuml.idea.toolwindow.image.ImageContainerPng;
@@ -231,84 +239,151 @@ public class PlantUmlToolWindow extends JPanel implements Disposable {
     }
 
     private Alarm myAlarm = new Alarm(Alarm.ThreadToUse.SWING_THREAD);
+    private CaretSource lastCaretSource;
 
     public void processRequest(final LazyApplicationPoolExecutor.Delay delay, final RenderCommand.Reason reason) {
         if (!toolWindow.isVisible()) {
             logger.debug("tool window not visible, aborting");
             return;
         }
+        if (reason == RenderCommand.Reason.CARET && isCaretInLastBlock()) {
+            logger.debug("caret in the same block, nothing to do");
+            return;
+        }
         Runnable renderRunnable = () -> {
             logger.debug("processRequest ", project.getName(), " ", delay, " ", reason);
             if (isProjectValid(project)) {
+                Editor editor = UIUtils.getSelectedTextEditor(fileEditorManager);
+                if (editor == null) {
+                    processSource(CaretSource.EMPTY, null, delay, reason);
+                    return;
+                }
+                Document document = editor.getDocument();
+                int offset = editor.getCaretModel().getOffset();
+                VirtualFile selectedFile = fileDocumentManager.getFile(document);
+                ReadAction.nonBlocking(() -> CaretSource.extract(document, offset))
+                        .expireWith(this)
+                        .coalesceBy(this)
+                        .finishOnUiThread(ModalityState.defaultModalityState(), caretSource -> processSource(caretSource, selectedFile, delay, reason))
+                        .submit(AppExecutorUtil.getAppExecutorService());
+            }
+        };
 
-                String source = UIUtils.getSelectedSourceWithCaret(fileEditorManager);
-                String sourceFilePath = null;
-                RenderCacheItem cachedItem = null;
+        int i = myAlarm.cancelAllRequests();
+        myAlarm.addRequest(Utils.logDuration("EDT processRequest", renderRunnable), delay == NOW ? 0 : 10);
+    }
 
-                if ("".equals(source)) { //is included file or some crap?
-                    logger.debug("empty source");
-                    cachedItem = renderCache.getDisplayedItem();
-                    if (cachedItem == null) {
-                        logger.debug("no DisplayedItem, empty source, reason=", reason);
-                        return;
-                    }
+    private boolean isCaretInLastBlock() {
+        CaretSource last = lastCaretSource;
+        if (last == null) {
+            return false;
+        }
+        Editor editor = UIUtils.getSelectedTextEditor(fileEditorManager);
+        return editor != null && last.contains(editor.getDocument(), editor.getCaretModel().getOffset());
+    }
 
-                    source = cachedItem.getSource();
-                    sourceFilePath = cachedItem.getSourceFilePath();
-                } else {
-                    VirtualFile selectedFile = UIUtils.getSelectedFile(fileEditorManager, fileDocumentManager);
-                    if (selectedFile != null) {
-                        sourceFilePath = selectedFile.getPath();
-                    } else {
-                        sourceFilePath = "DUMMY_NO_PATH";
-                    }
-                }
+    private void processSource(CaretSource caretSource, VirtualFile selectedFile, LazyApplicationPoolExecutor.Delay delay, RenderCommand.Reason reason) {
+        if (!isProjectValid(project)) {
+            return;
+        }
+        lastCaretSource = caretSource.blockRange != null ? caretSource : null;
+        String source = caretSource.source;
+        String sourceFilePath = null;
+        RenderCacheItem cachedItem = null;
+
+        if ("".equals(source)) { //is included file or some crap?
+            logger.debug("empty source");
+            cachedItem = renderCache.getDisplayedItem();
+            if (cachedItem == null) {
+                logger.debug("no DisplayedItem, empty source, reason=", reason);
+                return;
+            }
 
-                selectedPage = selectedPagePersistentStateComponent.getPage(sourceFilePath);
-                zoom = zoom.refresh(this, this.settings);
+            source = cachedItem.getSource();
+            sourceFilePath = cachedItem.getSourceFilePath();
+        } else {
+            if (selectedFile != null) {
+                sourceFilePath = selectedFile.getPath();
+            } else {
+                sourceFilePath = "DUMMY_NO_PATH";
+            }
+        }
 
-                logger.debug("setting selected page from storage ", selectedPage);
+        selectedPage = selectedPagePersistentStateComponent.getPage(sourceFilePath);
+        zoom = zoom.refresh(this, this.settings);
 
-                if (reason == RenderCommand.Reason.REFRESH) {
-                    logger.debug("executing command, reason=", reason);
-                    lazyExecutor.execute(getCommand(RenderCommand.Reason.REFRESH, sourceFilePath, source, selectedPage, zoom, null, delay));
-                    return;
-                }
+        logger.debug("setting selected page from storage ", selectedPage);
 
-                RenderCacheItem betterItem = renderCache.getCachedItem(sourceFilePath, source, selectedPage, zoom, fileDocumentManager, fileManager);
-                logger.debug("cacheItem ", betterItem);
-                if (betterItem != null) {
-                    cachedItem = betterItem;
-                }
+        if (reason == RenderCommand.Reason.REFRESH) {
+            logger.debug("executing command, reason=", reason);
+            lazyExecutor.execute(getCommand(RenderCommand.Reason.REFRESH, sourceFilePath, source, selectedPage, zoom, null, delay));
+            return;
+        }
 
-                if (cachedItem == null) {
-                    logger.debug("no cached item");
-                    lazyExecutor.execute(getCommand(reason, sourceFilePath, source, selectedPage, zoom, null, delay));
-                } else if (cachedItem.includedFilesChanged(fileDocumentManager, fileManager)) {
-                    logger.debug("includedFilesChanged");
-                    lazyExecutor.execute(getCommand(RenderCommand.Reason.INCLUDES, sourceFilePath, source, selectedPage, zoom, cachedItem, delay));
-                } else if (cachedItem.imageMissingOrZoomChanged(selectedPage, zoom)) {
-                    logger.debug("render required imageMissingOrZoomChanged");
-                    lazyExecutor.execute(getCommand(RenderCommand.Reason.SOURCE_PAGE_ZOOM, sourceFilePath, source, selectedPage, zoom, cachedItem, delay));
-                } else if (cachedItem.sourceChanged(source)) {
-                    logger.debug("render required sourceChanged");
-                    lazyExecutor.execute(getCommand(RenderCommand.Reason.SOURCE_PAGE_ZOOM, sourceFilePath, source, selectedPage, zoom, cachedItem, RESET_DELAY));
-                } else if (!renderCache.isDisplayed(cachedItem, selectedPage)) {
-                    logger.debug("render not required, displaying cached item ", cachedItem);
-                    displayExistingDiagram(cachedItem);
-                } else {
-                    logger.debug("render not required, item already displayed ", cachedItem);
-                    if (reason != RenderCommand.Reason.CARET) {
-                        cachedItem.setVersion(sequence.incrementAndGet());
-                        lazyExecutor.cancel();
-                        executionStatusPanel.updateNow(cachedItem.getVersion(), ExecutionStatusPanel.State.DONE, "cached");
-                    }
-                }
+        RenderCacheItem betterItem = renderCache.getCachedItem(sourceFilePath, source, selectedPage, zoom, fileDocumentManager, fileManager);
+        logger.debug("cacheItem ", betterItem);
+        if (betterItem != null) {
+            cachedItem = betterItem;
+        }
+
+        if (cachedItem == null) {
+            logger.debug("no cached item");
+            lazyExecutor.execute(getCommand(reason, sourceFilePath, source, selectedPage, zoom, null, delay));
+        } else if (cachedItem.includedFilesChanged(fileDocumentManager, fileManager)) {
+            logger.debug("includedFilesChanged");
+            lazyExecutor.execute(getCommand(RenderCommand.Reason.INCLUDES, sourceFilePath, source, selectedPage, zoom, cachedItem, delay));
+        } else if (cachedItem.imageMissingOrZoomChanged(selectedPage, zoom)) {
+            logger.debug("render required imageMissingOrZoomChanged");
+            lazyExecutor.execute(getCommand(RenderCommand.Reason.SOURCE_PAGE_ZOOM, sourceFilePath, source, selectedPage, zoom, cachedItem, delay));
+        } else if (cachedItem.sourceChanged(source)) {
+            logger.debug("render required sourceChanged");
+            lazyExecutor.execute(getCommand(RenderCommand.Reason.SOURCE_PAGE_ZOOM, sourceFilePath, source, selectedPage, zoom, cachedItem, RESET_DELAY));
+        } else if (!renderCache.isDisplayed(cachedItem, selectedPage)) {
+            logger.debug("render not required, displaying cached item ", cachedItem);
+            displayExistingDiagram(cachedItem);
+        } else {
+            logger.debug("render not required, item already displayed ", cachedItem);
+            if (reason != RenderCommand.Reason.CARET) {
+                cachedItem.setVersion(sequence.incrementAndGet());
+                lazyExecutor.cancel();
+                executionStatusPanel.updateNow(cachedItem.getVersion(), ExecutionStatusPanel.State.DONE, "cached");
             }
-        };
+        }
+    }
 
-        int i = myAlarm.cancelAllRequests();
-        myAlarm.addRequest(Utils.logDuration("EDT processRequest", renderRunnable), delay == NOW ? 0 : 10);
+    /**
+     * Source under the caret, with the range of its block - caret moves within the range of an unchanged document
+     * would give the same source.
+     */
+    private static class CaretSource {
+        static final CaretSource EMPTY = new CaretSource(null, 0, "", null);
+
+        private final Document document;
+        private final long modificationStamp;
+        private final String source;
+        @Nullable
+        private final TextRange blockRange;
+
+        private CaretSource(Document document, long modificationStamp, String source, @Nullable TextRange blockRange) {
+            this.document = document;
+            this.modificationStamp = modificationStamp;
+            this.source = source;
+            this.blockRange = blockRange;
+        }
+
+        static CaretSource extract(Document document, int offset) {
+            long modificationStamp = document.getModificationStamp();
+            String source = SourceExtractor.extractSource(document, offset);
+            TextRange blockRange = DiagramBlockIndex.getInstance(document).getBlockRange(document, offset);
+            return new CaretSource(document, modificationStamp, source, blockRange);
+        }
+
+        boolean contains(Document document, int offset) {
+            return this.document == document
+                    && modificationStamp == document.getModificationStamp()
+                    && blockRange != null
+                    && blockRange.getStartOffset() <= offset && offset <= blockRange.getEndOffset();
+        }
     }
 
     public void displayExistingDiagram(RenderCacheItem last) {
@@ -648,6 +723,11 @@ public class PlantUmlToolWindow extends JPanel implements Disposable {
         return renderCache.getDisplayedItem();
     }
 
+    @Nullable
+    public RenderCacheItem getItemWithImage(String sourceFilePath, String source, int page, ImageFormat format) {
+        return renderCache.getItemWithImage(sourceFilePath, source, page, format, zoom, fileDocumentManager, fileManager);
+    }
+
     private boolean isProjectValid(Project project) {
         return project != null && !project.isDisposed();
     }
@@ -16,9 +16,11 @@ import org.plantuml.idea.external.PlantUmlFacade;
 import org.plantuml.idea.lang.settings.PlantUmlSettings;
 import org.plantuml.idea.plantuml.ImageFormat;
 import org.plantuml.idea.rendering.ImageItem;
+import org.plantuml.idea.rendering.RenderCacheItem;
 import org.plantuml.idea.rendering.RenderRequest;
 import org.plantuml.idea.rendering.RenderResult;
 import org.plantuml.idea.rendering.RenderingType;
+import org.plantuml.idea.toolwindow.PlantUmlToolWindow;
 import org.plantuml.idea.toolwindow.Zoom;
 import org.plantuml.idea.toolwindow.image.links.LinkNavigator;
 import org.plantuml.idea.toolwindow.image.links.MyJLabel;
@@ -252,8 +254,14 @@ public class ImageContainerSvg extends JPanel implements ImageContainer {
         if (this.renderResult.getStrategy() == RenderingType.REMOTE) {
             throw new RuntimeException("not implemented");
         }
-        RenderRequest rr = new RenderRequest(this.renderRequest, ImageFormat.PNG);
-        Zoom zoom = UIUtils.getPlantUmlToolWindow(project).getZoom();
+        PlantUmlToolWindow toolWindow = UIUtils.getPlantUmlToolWindow(project);
+        RenderCacheItem cachedItem = toolWindow.getItemWithImage(renderRequest.getSourceFilePath(), renderRequest.getSource(), getPage(), ImageFormat.PNG);
+        if (cachedItem != null) {
+            LOG.debug("using cached png of page ", getPage());
+            return cachedItem.getImageItem(getPage()).getImage(project, cachedItem.getRenderRequest(), cachedItem.getRenderResult());
+        }
+        RenderRequest rr = new RenderRequest(this.renderRequest, ImageFormat.PNG, getPage());
+        Zoom zoom = toolWindow.getZoom();
         rr.setZoom(zoom);
         RenderResult render = PlantUmlFacade.get().render(rr, null);
         BufferedImage image = render.getImageItem(getPage()).getImage(project, rr, render);
@@ -8,6 +8,7 @@ import com.intellij.openapi.editor.event.DocumentListener;
 import com.intellij.openapi.fileEditor.FileDocumentManager;
 import com.intellij.openapi.vfs.VirtualFile;
 import org.plantuml.idea.lang.settings.PlantUmlSettings;
+import org.plantuml.idea.plantuml.DiagramBlockIndex;
 import org.plantuml.idea.rendering.LazyApplicationPoolExecutor;
 import org.plantuml.idea.rendering.RenderCommand;
 import org.plantuml.idea.util.UIUtils;
@@ -31,6 +32,7 @@ public class PlantUmlDocumentListener implements DocumentListener {
 
     @Override
     public void documentChanged(DocumentEvent event) {
+        DiagramBlockIndex.documentChanged(event);
         VirtualFile file = instance.getFile(event.getDocument());
         if (file == null) {
             return;//console
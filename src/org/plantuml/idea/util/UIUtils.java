@@ -40,7 +40,7 @@ public class UIUtils {
         if (selectedTextEditor != null) {
             final Document document = selectedTextEditor.getDocument();
             int offset = selectedTextEditor.getCaretModel().getOffset();
-            source = SourceExtractor.extractSource(document.getText(), offset);
+            source = SourceExtractor.extractSource(document, offset);
         }
         return source;
     }
@@ -2,7 +2,11 @@ package org.plantuml.idea.util;
 
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
 import com.intellij.openapi.fileTypes.FileType;
+import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiFile;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.math.IntRange;
@@ -10,16 +14,23 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.plantuml.idea.lang.PlantIUmlFileType;
 import org.plantuml.idea.lang.PlantUmlFileType;
+import org.plantuml.idea.lang.settings.PlantUmlSettings;
 
 import javax.imageio.ImageIO;
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static java.lang.Character.isDigit;
 import static java.lang.Character.isLetter;
@@ -137,6 +148,104 @@ public class Utils {
         return ImageIO.read(input);
     }
 
+    /**
+     * Included files are resolved the same way as by PlantUML - relative to the including file, then from 'included paths'.
+     */
+    @Nullable
+    public static File resolveIncludedFile(@Nullable File baseDir, String path) {
+        File file = new File(path);
+        if (file.isAbsolute()) {
+            return file.exists() ? file : null;
+        }
+        if (baseDir != null) {
+            file = new File(baseDir, path);
+            if (file.exists()) {
+                return file;
+            }
+        }
+        String includedPaths = PlantUmlSettings.getInstance().getIncludedPaths();
+        if (StringUtils.isNotBlank(includedPaths)) {
+            for (String dir : includedPaths.split("\n")) {
+                if (StringUtils.isNotBlank(dir)) {
+                    file = new File(dir.trim(), path);
+                    if (file.exists()) {
+                        return file;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return modification stamp of the loaded document of the file, changes also with unsaved edits
+     */
+    public static long documentModificationStamp(File file) {
+        if (isUnitTest()) {
+            return 0;
+        }
+        VirtualFile virtualFile = LocalFileSystem.getInstance().findFileByIoFile(file);
+        if (virtualFile == null) {
+            return 0;
+        }
+        Document document = FileDocumentManager.getInstance().getCachedDocument(virtualFile);
+        return document == null ? 0 : document.getModificationStamp();
+    }
+
+    /**
+     * @return the configured encoding, PlantUML reads included files with it, or the platform default when not valid
+     */
+    @NotNull
+    public static Charset includedFileCharset() {
+        String encoding = PlantUmlSettings.getInstance().getEncoding();
+        if (StringUtils.isNotBlank(encoding)) {
+            try {
+                return Charset.forName(encoding.trim());
+            } catch (IllegalArgumentException e) {
+                LOG.debug("invalid encoding ", encoding, e);
+            }
+        }
+        return Charset.defaultCharset();
+    }
+
+    /**
+     * @return text of the loaded document of the file, or of the file on disk, null when it can not be read
+     */
+    @Nullable
+    public static CharSequence documentOrFileText(File file) {
+        if (!isUnitTest()) {
+            VirtualFile virtualFile = LocalFileSystem.getInstance().findFileByIoFile(file);
+            Document document = virtualFile == null ? null : FileDocumentManager.getInstance().getCachedDocument(virtualFile);
+            if (document != null) {
+                return document.getImmutableCharSequence();
+            }
+        }
+        try {
+            return new String(Files.readAllBytes(file.toPath()), includedFileCharset());
+        } catch (IOException e) {
+            LOG.debug("unable to read ", file, e);
+            return null;
+        }
+    }
+
+    /**
+     * @return modification stamps of unsaved documents by their file path
+     */
+    public static Map<String, Long> unsavedDocumentStamps() {
+        if (isUnitTest()) {
+            return Collections.emptyMap();
+        }
+        FileDocumentManager documentManager = FileDocumentManager.getInstance();
+        Map<String, Long> result = new HashMap<>();
+        for (Document document : documentManager.getUnsavedDocuments()) {
+            VirtualFile file = documentManager.getFile(document);
+            if (file != null) {
+                result.put(file.getPath(), document.getModificationStamp());
+            }
+        }
+        return result;
+    }
+
     public static boolean isUnitTest() {
         return ApplicationManager.getApplication() == null || ApplicationManager.getApplication().isUnitTestMode();
     }
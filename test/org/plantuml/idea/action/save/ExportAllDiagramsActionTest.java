@@ -0,0 +1,29 @@
+package org.plantuml.idea.action.save;
+
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.testFramework.fixtures.LightPlatformCodeInsightFixtureTestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ExportAllDiagramsActionTest extends LightPlatformCodeInsightFixtureTestCase {
+
+    public void testCollectsDiagramsFromComments() {
+        VirtualFile file = myFixture.addFileToProject("diagrams.txt", "/**\n" +
+                " * @startuml\n" +
+                " * Bob -> Alice: hello\n" +
+                " * @enduml\n" +
+                " */\n" +
+                "@startuml\n" +
+                "A -> B\n" +
+                "@enduml\n").getVirtualFile();
+
+        List<ExportAllDiagramsAction.Job> jobs = new ArrayList<>();
+        ExportAllDiagramsAction.collect(file, jobs);
+
+        assertEquals(2, jobs.size());
+        assertEquals("@startuml\nBob -> Alice: hello\n@enduml", jobs.get(0).source);
+        assertEquals("@startuml\nA -> B\n@enduml", jobs.get(1).source);
+        assertTrue(jobs.get(1).pathPrefix.endsWith("/diagrams_001"));
+    }
+}
@@ -0,0 +1,184 @@
+package org.plantuml.idea.external;
+
+import com.intellij.util.ThrowableConvertor;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.plantuml.idea.plantuml.ImageFormat;
+import org.plantuml.idea.rendering.ImageItem;
+import org.plantuml.idea.rendering.RenderRequest;
+import org.plantuml.idea.rendering.RenderResult;
+import org.plantuml.idea.rendering.RenderingCancelledException;
+import org.plantuml.idea.rendering.RenderingType;
+import org.plantuml.idea.toolwindow.Zoom;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+
+public class RemoteRendererTest {
+    private static final String SOURCE = "@startuml\nA->B\nnewpage\nC->D\n@enduml";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<String> paths = new CopyOnWriteArrayList<>();
+    private final List<String> sourceFiles = new CopyOnWriteArrayList<>();
+    private final ExecutorService pool = Executors.newCachedThreadPool();
+    private final CountDownLatch requested = new CountDownLatch(1);
+    private final CountDownLatch respond = new CountDownLatch(1);
+    private HttpServer stub;
+    private File included;
+
+    @After
+    public void tearDown() {
+        respond.countDown();
+        pool.shutdownNow();
+        if (stub != null) {
+            stub.stop(0);
+        }
+    }
+
+    @Test
+    public void rendersSharedInRequestedFormat() throws Exception {
+        RenderResult result = renderShared(ImageFormat.PNG, Collections.emptySet());
+
+        Assert.assertEquals(RenderingType.SHARED, result.getStrategy());
+        Assert.assertEquals(2, result.getRendered());
+        for (ImageItem imageItem : result.getImageItems()) {
+            Assert.assertEquals(RenderingType.SHARED, imageItem.getRenderingType());
+            Assert.assertEquals(ImageFormat.PNG, imageItem.getFormat());
+            Assert.assertFalse(imageItem.hasError());
+            Assert.assertEquals("Title \u00e4", imageItem.getTitle());
+            Assert.assertEquals("file name", imageItem.getCustomFileName());
+        }
+        Assert.assertEquals(new HashSet<>(Arrays.asList("/token/png/0/encoded", "/token/png/1/encoded")), new HashSet<>(paths));
+        Assert.assertEquals(Arrays.asList("/diagram.puml", "/diagram.puml"), sourceFiles);
+    }
+
+    @Test
+    public void collectsIncludedAndInlinedFiles() throws Exception {
+        File inlined = folder.newFile("unsaved include.iuml");
+
+        RenderResult result = renderShared(ImageFormat.SVG, Collections.singleton(inlined));
+
+        Map<File, Long> expected = new LinkedHashMap<>();
+        expected.put(included.getAbsoluteFile(), included.lastModified());
+        expected.put(inlined, inlined.lastModified());
+        Assert.assertEquals(expected, result.getIncludedFiles());
+    }
+
+    @Test
+    public void cancelsSupersededRender() throws Exception {
+        String prefix = slowStub();
+        Future<RenderResult> render = pool.submit(() -> render(prefix, source -> "encoded"));
+        Assert.assertTrue(requested.await(5, TimeUnit.SECONDS));
+        Assert.assertTrue(RemoteRenderer.isInFlight("/diagram.puml"));
+
+        RemoteRenderer.cancelStale("/diagram.puml", SOURCE + "\nE->F", 2);
+
+        assertCancelled(render);
+        Assert.assertFalse(RemoteRenderer.isInFlight("/diagram.puml"));
+    }
+
+    @Test
+    public void doesNotCancelRenderOfSameSource() throws Exception {
+        String prefix = slowStub();
+        Future<RenderResult> render = pool.submit(() -> render(prefix, source -> "encoded"));
+        Assert.assertTrue(requested.await(5, TimeUnit.SECONDS));
+
+        RemoteRenderer.cancelStale("/diagram.puml", SOURCE, 2);
+        respond.countDown();
+
+        Assert.assertFalse(render.get(5, TimeUnit.SECONDS).hasError());
+        //unregistered when done
+        Assert.assertFalse(RemoteRenderer.isInFlight("/diagram.puml"));
+    }
+
+    @Test
+    public void cancelsRequestsSentAfterCancel() throws Exception {
+        String prefix = slowStub();
+        CountDownLatch encoding = new CountDownLatch(1);
+        CountDownLatch cancelled = new CountDownLatch(1);
+        Future<RenderResult> render = pool.submit(() -> render(prefix, source -> {
+            encoding.countDown();
+            try {
+                cancelled.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            return "encoded";
+        }));
+        Assert.assertTrue(encoding.await(5, TimeUnit.SECONDS));
+
+        RemoteRenderer.cancelStale("/diagram.puml", SOURCE + "\nE->F", 2);
+        cancelled.countDown();
+
+        assertCancelled(render);
+    }
+
+    private static void assertCancelled(Future<RenderResult> render) throws Exception {
+        try {
+            //the stub does not respond until the test ends
+            render.get(5, TimeUnit.SECONDS);
+            Assert.fail("superseded render should be cancelled");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof RenderingCancelledException);
+        }
+    }
+
+    private static RenderResult render(String prefix, ThrowableConvertor<String, String, IOException> encoder) {
+        RemoteServers servers = new RemoteServers(Collections.singletonList(prefix), 0);
+        RenderRequest renderRequest = new RenderRequest("/diagram.puml", SOURCE, ImageFormat.SVG, -1, new Zoom(100), 1, false, null);
+        return RemoteRenderer.renderShared(renderRequest, null, servers, SOURCE, Collections.emptySet(), encoder);
+    }
+
+    private String slowStub() throws IOException {
+        stub = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        stub.createContext("/token", exchange -> {
+            requested.countDown();
+            try {
+                respond.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] bytes = "<svg xmlns=\"http://www.w3.org/2000/svg\"/>".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        });
+        stub.setExecutor(pool);
+        stub.start();
+        return "http://127.0.0.1:" + stub.getAddress().getPort() + "/token";
+    }
+
+    private RenderResult renderShared(ImageFormat format, Collection<File> inlinedFiles) throws Exception {
+        included = folder.newFile("included file.iuml");
+        stub = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        stub.createContext("/token", exchange -> {
+            paths.add(exchange.getRequestURI().getPath());
+            sourceFiles.add(exchange.getRequestHeaders().getFirst(SharedRenderServer.HEADER_SOURCE_FILE));
+            exchange.getResponseHeaders().add(SharedRenderServer.HEADER_INCLUDED, SharedRenderServer.includedHeader(included, included.lastModified()));
+            exchange.getResponseHeaders().add(SharedRenderServer.HEADER_TITLE, SharedRenderServer.encodeHeader("Title \u00e4"));
+            exchange.getResponseHeaders().add(SharedRenderServer.HEADER_FILENAME, SharedRenderServer.encodeHeader("file name"));
+            byte[] bytes = "<svg xmlns=\"http://www.w3.org/2000/svg\"/>".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        });
+        stub.start();
+        RemoteServers servers = new RemoteServers(Collections.singletonList("http://127.0.0.1:" + stub.getAddress().getPort() + "/token"), 0);
+        RenderRequest renderRequest = new RenderRequest("/diagram.puml", SOURCE, format, -1, new Zoom(100), null, false, null);
+
+        return RemoteRenderer.renderShared(renderRequest, null, servers, SOURCE, inlinedFiles, source -> "encoded");
+    }
+}
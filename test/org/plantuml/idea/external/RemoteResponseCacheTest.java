@@ -0,0 +1,193 @@
+package org.plantuml.idea.external;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.net.ssl.SSLSession;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+
+public class RemoteResponseCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void evictsLeastRecentlyUsedFromMemory() throws Exception {
+        //nothing stays on disk
+        RemoteResponseCache cache = new RemoteResponseCache(folder.getRoot(), 8, 0, Runnable::run);
+
+        cache.put("/a", response(200, "aaaa"));
+        cache.put("/b", response(200, "bbbb"));
+        Assert.assertNotNull(cache.get("/a"));
+        cache.put("/c", response(200, "cccc"));
+
+        Assert.assertNull(cache.get("/b"));
+        Assert.assertEquals("aaaa", body(cache.get("/a")));
+        Assert.assertEquals("cccc", body(cache.get("/c")));
+        Assert.assertEquals(0, folder.getRoot().listFiles().length);
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedFromDisk() throws Exception {
+        //nothing stays in memory
+        RemoteResponseCache cache = new RemoteResponseCache(folder.getRoot(), 0, Long.MAX_VALUE, Runnable::run);
+        cache.put("/a", response(200, "aaaa"));
+        cache.put("/b", response(200, "bbbb"));
+        long now = System.currentTimeMillis();
+        Assert.assertTrue(cache.file("/a").setLastModified(now - 20_000));
+        Assert.assertTrue(cache.file("/b").setLastModified(now - 10_000));
+        long size = cache.file("/a").length() + cache.file("/b").length();
+
+        cache = new RemoteResponseCache(folder.getRoot(), 0, size, Runnable::run);
+        Assert.assertEquals("aaaa", body(cache.get("/a")));
+        cache.put("/c", response(200, "cccc"));
+
+        Assert.assertNull(cache.get("/b"));
+        Assert.assertEquals("aaaa", body(cache.get("/a")));
+        Assert.assertEquals("cccc", body(cache.get("/c")));
+    }
+
+    @Test
+    public void writesToDiskOnExecutor() throws Exception {
+        List<Runnable> writes = new ArrayList<>();
+        RemoteResponseCache cache = new RemoteResponseCache(folder.getRoot(), 0, Long.MAX_VALUE, writes::add);
+
+        cache.put("/a", response(200, "aaaa"));
+        Assert.assertFalse(cache.file("/a").exists());
+        Assert.assertEquals(1, writes.size());
+
+        writes.get(0).run();
+        Assert.assertEquals("aaaa", body(cache.get("/a")));
+    }
+
+    @Test
+    public void doesNotCacheErrors() throws Exception {
+        RemoteResponseCache cache = new RemoteResponseCache(folder.getRoot(), 1024, 1024, Runnable::run);
+
+        Assert.assertEquals(400, cache.put("/a", response(400, "error")).getStatusCode());
+        Assert.assertNull(cache.get("/a"));
+    }
+
+    @Test
+    public void doesNotStoreNoStore() throws Exception {
+        RemoteResponseCache cache = new RemoteResponseCache(folder.getRoot(), 1024, 1024, Runnable::run);
+
+        Assert.assertEquals("x", body(cache.put("/no-store", response(200, "x", "Cache-Control", "no-store"))));
+        Assert.assertNull(cache.get("/no-store"));
+        Assert.assertFalse(cache.file("/no-store").exists());
+
+        //no-cache is stored, only revalidated before each use
+        cache.put("/no-cache", response(200, "x", "Cache-Control", "no-cache"));
+        Assert.assertFalse(cache.get("/no-cache").isFresh());
+        Assert.assertTrue(cache.file("/no-cache").exists());
+    }
+
+    @Test
+    public void dropsEntryRevalidatedWithNoStore() throws Exception {
+        RemoteResponseCache cache = new RemoteResponseCache(folder.getRoot(), 1024, 1024, Runnable::run);
+        RemoteResponseCache.Entry stale = cache.put("/a", response(200, "aaaa", "Cache-Control", "no-cache", "ETag", "\"1\""));
+
+        Assert.assertEquals("aaaa", body(cache.revalidated("/a", stale, response(304, "", "Cache-Control", "no-store"))));
+
+        Assert.assertNull(cache.get("/a"));
+        Assert.assertFalse(cache.file("/a").exists());
+    }
+
+    @Test
+    public void freshness() throws Exception {
+        RemoteResponseCache cache = new RemoteResponseCache(folder.getRoot(), 1024, 1024, Runnable::run);
+
+        Assert.assertTrue(cache.put("/default", response(200, "x")).isFresh());
+        Assert.assertTrue(cache.put("/max-age", response(200, "x", "Cache-Control", "max-age=60")).isFresh());
+        Assert.assertFalse(cache.put("/max-age-0", response(200, "x", "Cache-Control", "max-age=0")).isFresh());
+        Assert.assertFalse(cache.put("/no-cache", response(200, "x", "Cache-Control", "no-cache")).isFresh());
+        Assert.assertTrue(cache.put("/expires", response(200, "x", "Expires", httpDate(ZonedDateTime.now().plusHours(1)))).isFresh());
+        Assert.assertFalse(cache.put("/expired", response(200, "x", "Expires", httpDate(ZonedDateTime.now().minusHours(1)))).isFresh());
+        Assert.assertFalse(cache.put("/invalid", response(200, "x", "Expires", "0")).isFresh());
+        //max-age takes precedence
+        Assert.assertTrue(cache.put("/both", response(200, "x", "Cache-Control", "max-age=60", "Expires", httpDate(ZonedDateTime.now().minusHours(1)))).isFresh());
+    }
+
+    @Test
+    public void revalidates() throws Exception {
+        RemoteResponseCache cache = new RemoteResponseCache(folder.getRoot(), 1024, 1024, Runnable::run);
+        RemoteResponseCache.Entry stale = cache.put("/a", response(200, "aaaa", "Cache-Control", "no-cache", "ETag", "\"1\""));
+        Assert.assertFalse(cache.get("/a").isFresh());
+
+        RemoteResponseCache.Entry revalidated = cache.revalidated("/a", stale, response(304, "", "Cache-Control", "max-age=60"));
+
+        Assert.assertTrue(revalidated.isFresh());
+        Assert.assertEquals("aaaa", body(revalidated));
+        Assert.assertEquals("\"1\"", revalidated.getEtag());
+        Assert.assertTrue(new RemoteResponseCache(folder.getRoot(), 1024, 1024, Runnable::run).get("/a").isFresh());
+    }
+
+    private static String body(RemoteResponseCache.Entry entry) {
+        Assert.assertNotNull(entry);
+        return new String(entry.getBody(), StandardCharsets.UTF_8);
+    }
+
+    private static String httpDate(ZonedDateTime time) {
+        return DateTimeFormatter.RFC_1123_DATE_TIME.format(time.withZoneSameInstant(ZoneOffset.UTC));
+    }
+
+    private static HttpResponse<byte[]> response(int statusCode, String body, String... headers) {
+        Map<String, List<String>> map = new HashMap<>();
+        for (int i = 0; i < headers.length; i += 2) {
+            map.put(headers[i], Collections.singletonList(headers[i + 1]));
+        }
+        HttpHeaders httpHeaders = HttpHeaders.of(map, (name, value) -> true);
+        return new HttpResponse<byte[]>() {
+            @Override
+            public int statusCode() {
+                return statusCode;
+            }
+
+            @Override
+            public HttpRequest request() {
+                return HttpRequest.newBuilder(uri()).build();
+            }
+
+            @Override
+            public Optional<HttpResponse<byte[]>> previousResponse() {
+                return Optional.empty();
+            }
+
+            @Override
+            public HttpHeaders headers() {
+                return httpHeaders;
+            }
+
+            @Override
+            public byte[] body() {
+                return body.getBytes(StandardCharsets.UTF_8);
+            }
+
+            @Override
+            public Optional<SSLSession> sslSession() {
+                return Optional.empty();
+            }
+
+            @Override
+            public URI uri() {
+                return URI.create("http://localhost/");
+            }
+
+            @Override
+            public HttpClient.Version version() {
+                return HttpClient.Version.HTTP_1_1;
+            }
+        };
+    }
+}
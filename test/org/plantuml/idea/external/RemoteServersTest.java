@@ -0,0 +1,115 @@
+package org.plantuml.idea.external;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class RemoteServersTest {
+
+    private final List<HttpServer> stubs = new ArrayList<>();
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @After
+    public void tearDown() {
+        for (HttpServer stub : stubs) {
+            stub.stop(0);
+        }
+    }
+
+    @Test
+    public void failsOverOn5xx() throws Exception {
+        String failing = stub(500, "failed", 0);
+        String working = stub(200, "ok", 0);
+        RemoteServers servers = new RemoteServers(Arrays.asList(failing, working), 0);
+
+        Assert.assertEquals("ok", body(servers.send(client, RemoteServersTest::request).get(5, TimeUnit.SECONDS)));
+        Assert.assertEquals(Arrays.asList(working, failing), servers.ordered());
+    }
+
+    @Test
+    public void failsOverOnDeadServer() throws Exception {
+        String dead = stub(200, "dead", 0);
+        stubs.remove(stubs.size() - 1).stop(0);
+        String working = stub(200, "ok", 0);
+        RemoteServers servers = new RemoteServers(Arrays.asList(dead, working), 0);
+
+        Assert.assertEquals("ok", body(servers.send(client, RemoteServersTest::request).get(5, TimeUnit.SECONDS)));
+        Assert.assertEquals(working, servers.ordered().get(0));
+    }
+
+    @Test
+    public void hedgesSlowServer() throws Exception {
+        String slow = stub(200, "slow", 3000);
+        String fast = stub(200, "fast", 0);
+        RemoteServers servers = new RemoteServers(Arrays.asList(slow, fast), 100);
+
+        long start = System.currentTimeMillis();
+        Assert.assertEquals("fast", body(servers.send(client, RemoteServersTest::request).get(5, TimeUnit.SECONDS)));
+        Assert.assertTrue(System.currentTimeMillis() - start < 2000);
+    }
+
+    @Test
+    public void returnsLastResponseWhenAllFail() throws Exception {
+        String first = stub(500, "first", 0);
+        String second = stub(503, "second", 0);
+        RemoteServers servers = new RemoteServers(Arrays.asList(first, second), 0);
+
+        HttpResponse<byte[]> response = servers.send(client, RemoteServersTest::request).get(5, TimeUnit.SECONDS);
+        Assert.assertEquals(503, response.statusCode());
+    }
+
+    @Test
+    public void cacheKeyDependsOnServers() {
+        String path = "/svg/SyfFKj2rKt3CoKnELR1Io4ZDoSa70000";
+        String key = new RemoteServers(Arrays.asList("http://a", "http://b"), 0).cacheKey(path);
+
+        Assert.assertEquals(key, new RemoteServers(Arrays.asList("http://b", "http://a"), 0).cacheKey(path));
+        Assert.assertNotEquals(key, new RemoteServers(Arrays.asList("http://a", "http://c"), 0).cacheKey(path));
+        Assert.assertNotEquals(key, new RemoteServers(Arrays.asList("http://a", "http://b"), 0).cacheKey(path + "0"));
+    }
+
+    private String stub(int status, String body, long delayMillis) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(status, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        });
+        server.setExecutor(null);
+        server.start();
+        stubs.add(server);
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/plantuml";
+    }
+
+    private static HttpRequest request(String prefix) {
+        return HttpRequest.newBuilder(URI.create(prefix + "/svg/SyfFKj2rKt3CoKnELR1Io4ZDoSa70000"))
+                .timeout(Duration.ofSeconds(5))
+                .build();
+    }
+
+    private static String body(HttpResponse<byte[]> response) {
+        return new String(response.body(), StandardCharsets.UTF_8);
+    }
+}
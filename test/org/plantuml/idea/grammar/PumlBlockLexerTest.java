@@ -0,0 +1,42 @@
+package org.plantuml.idea.grammar;
+
+import com.intellij.lexer.Lexer;
+import org.junit.Assert;
+import org.junit.Test;
+import org.plantuml.idea.grammar.psi.PumlBlockElementType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class PumlBlockLexerTest {
+
+    @Test
+    public void blocks() {
+        String text = "a\n@startuml\nA->B\n  @enduml x\nfoo\n  @startuml(id=b)\n@startuml\nC\n@enduml";
+        Assert.assertEquals(Arrays.asList("@startuml\nA->B\n  @enduml x", "@startuml(id=b)\n@startuml\nC\n@enduml"), blocks(text));
+    }
+
+    @Test
+    public void unterminatedBlock() {
+        Assert.assertEquals(Collections.emptyList(), blocks("x\n@startuml\nA->B\n"));
+    }
+
+    private static List<String> blocks(String text) {
+        List<String> blocks = new ArrayList<>();
+        Lexer lexer = new PumlBlockLexer();
+        lexer.start(text);
+        int end = 0;
+        while (lexer.getTokenType() != null) {
+            Assert.assertEquals(end, lexer.getTokenStart());
+            end = lexer.getTokenEnd();
+            if (lexer.getTokenType() == PumlBlockElementType.BLOCK) {
+                blocks.add(text.substring(lexer.getTokenStart(), lexer.getTokenEnd()));
+            }
+            lexer.advance();
+        }
+        Assert.assertEquals(text.length(), end);
+        return blocks;
+    }
+}
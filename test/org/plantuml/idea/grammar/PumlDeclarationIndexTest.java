@@ -0,0 +1,25 @@
+package org.plantuml.idea.grammar;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Map;
+
+public class PumlDeclarationIndexTest {
+
+    @Test
+    public void firstOccurrence() {
+        Map<String, Integer> index = PumlDeclarationIndex.index("@startuml\nclass Foo\n!include bar.puml\nFoo --> \"Bar baz\"\n@enduml");
+        Assert.assertEquals(Integer.valueOf(16), index.get("Foo"));
+        Assert.assertTrue(index.containsKey("\"Bar baz\""));
+        Assert.assertTrue(index.containsKey("-->"));
+    }
+
+    @Test
+    public void includeLineIsNotIndexed() {
+        Map<String, Integer> index = PumlDeclarationIndex.index("!include bar.puml\nbaz");
+        Assert.assertFalse(index.containsKey("!include"));
+        Assert.assertFalse(index.containsKey("bar.puml"));
+        Assert.assertEquals(Integer.valueOf(18), index.get("baz"));
+    }
+}
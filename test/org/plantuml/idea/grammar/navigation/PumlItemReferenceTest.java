@@ -0,0 +1,59 @@
+package org.plantuml.idea.grammar.navigation;
+
+import com.intellij.codeInsight.lookup.LookupElement;
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.openapi.editor.Document;
+import com.intellij.psi.PsiDocumentManager;
+import com.intellij.psi.PsiFile;
+import com.intellij.testFramework.fixtures.LightPlatformCodeInsightFixtureTestCase;
+import org.plantuml.idea.lang.PlantUmlFileType;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class PumlItemReferenceTest extends LightPlatformCodeInsightFixtureTestCase {
+
+    public void testVariantsAreNotFilteredByFirstCharacter() {
+        PsiFile file = myFixture.configureByText(PlantUmlFileType.INSTANCE, "@startuml\nclass FooBar\nclass QuxBar\nbar\n@enduml");
+
+        List<String> variants = lookupStrings(new PumlItemReference.ItemVariants(file).get("bar"));
+
+        assertTrue(variants.contains("FooBar"));
+        assertTrue(variants.contains("QuxBar"));
+        //the item being typed
+        assertFalse(variants.contains("bar"));
+    }
+
+    public void testMiddleMatchesAreCompleted() {
+        myFixture.configureByText(PlantUmlFileType.INSTANCE, "@startuml\nclass FooBar\nclass QuxBar\nbar<caret>\n@enduml");
+
+        myFixture.completeBasic();
+
+        List<String> lookupElementStrings = myFixture.getLookupElementStrings();
+        assertNotNull(lookupElementStrings);
+        assertTrue(lookupElementStrings.contains("FooBar"));
+        assertTrue(lookupElementStrings.contains("QuxBar"));
+    }
+
+    public void testVariantsAreRebuiltOnModification() {
+        myFixture.configureByText(PlantUmlFileType.INSTANCE, "@startuml\nclass FooBar\nclass FooBaz\nFoo<caret>\n@enduml");
+        myFixture.completeBasic();
+        assertFalse(myFixture.getLookupElementStrings().contains("FooQux"));
+        myFixture.getLookup().hideLookup(true);
+
+        Document document = myFixture.getEditor().getDocument();
+        WriteCommandAction.runWriteCommandAction(getProject(), () -> document.insertString(document.getText().indexOf("Foo\n"), "class FooQux\n"));
+        PsiDocumentManager.getInstance(getProject()).commitDocument(document);
+        myFixture.completeBasic();
+
+        assertTrue(myFixture.getLookupElementStrings().contains("FooQux"));
+    }
+
+    private static List<String> lookupStrings(Object[] variants) {
+        List<String> result = new ArrayList<>();
+        for (Object variant : variants) {
+            result.add(((LookupElement) variant).getLookupString());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,35 @@
+package org.plantuml.idea.lang.annotator;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class KeywordScannerTest {
+
+    @Test
+    public void scan() {
+        String source = "@startuml\n 'comment class\nactor A [class] : note\ntop to bottom direction\n!ifdef X\n@enduml";
+        Assert.assertEquals("[@startuml TAG, 'comment class LINE_COMMENT, actor KEYWORD, top to bottom direction KEYWORD, !ifdef PREPROC, @enduml TAG]",
+                scan(source, true).toString());
+    }
+
+    @Test
+    public void keywordHighlightingDisabled() {
+        String source = "@startuml\nactor A\nidea.partialRender\n!include foo.puml\n@enduml";
+        Assert.assertEquals("[@startuml TAG, idea.partialRender PLUGIN_SETTING, !include PREPROC, @enduml TAG]",
+                scan(source, false).toString());
+    }
+
+    @Test
+    public void wordBoundaries() {
+        Assert.assertEquals("[]", scan("actors classes !include_many @startumlx", true).toString());
+    }
+
+    private static List<String> scan(String source, boolean keywordHighlighting) {
+        List<String> tokens = new ArrayList<>();
+        KeywordScanner.INSTANCE.scan(source, keywordHighlighting, (start, end, kind) -> tokens.add(source.substring(start, end).trim() + " " + kind));
+        return tokens;
+    }
+}
@@ -5,7 +5,13 @@ import com.intellij.openapi.editor.colors.TextAttributesKey;
 import com.intellij.psi.PsiFile;
 import com.intellij.testFramework.fixtures.LightPlatformCodeInsightFixtureTestCase;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.stream.Collectors;
 
 public class PlantUmlExternalAnnotatorTest extends LightPlatformCodeInsightFixtureTestCase {
@@ -68,6 +74,69 @@ public class PlantUmlExternalAnnotatorTest extends LightPlatformCodeInsightFixtu
         assertEquals(62, secondBlockCommentAnnotation.endSourceOffset);
     }
 
+    public void testUnchangedBlockReused() {
+        String second = "@startuml\nactor User\n@enduml";
+        PsiFile psiFile = createForPUMLFile("@startuml\nactor A\n@enduml\n" + second);
+        FileAnnotationResult first = plantUmlExternalAnnotator.doAnnotate(new PlantUmlExternalAnnotator.Info(psiFile));
+
+        PsiFile changed = createForPUMLFile("@startuml\nactor Alice\n@enduml\n" + second);
+        FileAnnotationResult next = plantUmlExternalAnnotator.doAnnotate(new PlantUmlExternalAnnotator.Info(changed));
+
+        List<SourceAnnotationResult> before = new ArrayList<>(first.getSourceAnnotationResults());
+        List<SourceAnnotationResult> after = new ArrayList<>(next.getSourceAnnotationResults());
+        assertSize(2, after);
+        assertNotSame(before.get(0).getAnnotations(), after.get(0).getAnnotations());
+        assertSame(before.get(1).getAnnotations(), after.get(1).getAnnotations());
+        assertEquals(before.get(1).getSourceOffset() + 4, after.get(1).getSourceOffset());
+    }
+
+    public void testTimedOutCheckReportsStaleErrors() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        List<Runnable> lateResults = new CopyOnWriteArrayList<>();
+        ExecutorService pool = Executors.newCachedThreadPool();
+        try {
+            SyntaxCheckExecutor executor = new SyntaxCheckExecutor((source, file) -> {
+                if (source.contains("Alice")) {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return Collections.singletonList(new ErrorSourceAnnotation(Collections.singletonList("Syntax Error?"), null, 1));
+            }, pool, lateResults::add);
+            PlantUmlExternalAnnotator annotator = new PlantUmlExternalAnnotator(executor, 50);
+
+            FileAnnotationResult first = annotator.doAnnotate(new PlantUmlExternalAnnotator.Info(createForPUMLFile("@startuml\nactor A\n@enduml")));
+            assertFalse(getErrors(first).get(0).isStale());
+
+            PsiFile changed = createForPUMLFile("@startuml\nactor Alice\n@enduml");
+            List<ErrorSourceAnnotation> stale = getErrors(annotator.doAnnotate(annotator.collectInformation(changed)));
+            assertSize(1, stale);
+            assertTrue(stale.get(0).isStale());
+
+            release.countDown();
+            SyntaxCheckExecutorTest.waitFor(() -> lateResults.size() == 1);
+            //restarts highlighting of the unchanged file
+            lateResults.get(0).run();
+            List<ErrorSourceAnnotation> late = getErrors(annotator.doAnnotate(new PlantUmlExternalAnnotator.Info(changed)));
+            assertSize(1, late);
+            assertFalse(late.get(0).isStale());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private List<ErrorSourceAnnotation> getErrors(FileAnnotationResult result) {
+        return result
+                .getSourceAnnotationResults()
+                .stream()
+                .flatMap(sourceAnnotationResult -> sourceAnnotationResult.getAnnotations().stream())
+                .filter(annotation -> annotation instanceof ErrorSourceAnnotation)
+                .map(annotation -> (ErrorSourceAnnotation) annotation)
+                .collect(Collectors.toList());
+    }
+
     private PsiFile createForPUMLFile(String text) {
         return myFixture.configureByText("PUML", text);
     }
@@ -0,0 +1,46 @@
+package org.plantuml.idea.lang.annotator;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+public class SourceAnnotationCacheTest {
+    private static final String SOURCE = "@startuml\n!include sub/a.iuml\nA->B\n@enduml";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void fingerprintChangesWithNestedInclude() throws Exception {
+        File root = folder.getRoot();
+        write(new File(root, "sub/a.iuml"), "!include b.iuml\n");
+        File nested = write(new File(root, "sub/b.iuml"), "A->C\n");
+
+        String before = SourceAnnotationCache.includesFingerprint(SOURCE, root);
+        Assert.assertTrue(nested.setLastModified(nested.lastModified() - 10_000));
+
+        Assert.assertNotEquals(before, SourceAnnotationCache.includesFingerprint(SOURCE, root));
+    }
+
+    @Test
+    public void includeCycleIsWalkedOnce() throws Exception {
+        File root = folder.getRoot();
+        write(new File(root, "sub/a.iuml"), "!include \"b.iuml\"\n");
+        write(new File(root, "sub/b.iuml"), "!include a.iuml\n");
+
+        String fingerprint = SourceAnnotationCache.includesFingerprint(SOURCE, root);
+
+        Assert.assertEquals(2, fingerprint.split(";").length);
+    }
+
+    private static File write(File file, String text) throws Exception {
+        Assert.assertTrue(file.getParentFile().isDirectory() || file.getParentFile().mkdirs());
+        Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
@@ -0,0 +1,108 @@
+package org.plantuml.idea.lang.annotator;
+
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.testFramework.fixtures.LightPlatformCodeInsightFixtureTestCase;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.BooleanSupplier;
+
+public class SyntaxCheckExecutorTest extends LightPlatformCodeInsightFixtureTestCase {
+
+    private final ExecutorService pool = Executors.newCachedThreadPool();
+    private final List<Runnable> lateResults = new CopyOnWriteArrayList<>();
+    private final AtomicInteger calls = new AtomicInteger();
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch interrupted = new CountDownLatch(1);
+
+    @Override
+    protected void tearDown() throws Exception {
+        try {
+            pool.shutdownNow();
+        } finally {
+            super.tearDown();
+        }
+    }
+
+    public void testCancelledCheckInterruptsWorker() throws Exception {
+        SyntaxCheckExecutor executor = new SyntaxCheckExecutor(blocking(), pool, lateResults::add);
+
+        try {
+            executor.check("file", key("A"), "A", null, 0, () -> started.getCount() == 0, () -> {
+            });
+            fail("document changed, the check should be cancelled");
+        } catch (ProcessCanceledException expected) {
+        }
+
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        assertTrue(lateResults.isEmpty());
+    }
+
+    public void testTimedOutCheckIsReusedAndCallsBack() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        SyntaxCheckExecutor executor = new SyntaxCheckExecutor((source, file) -> {
+            calls.incrementAndGet();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return Collections.emptyList();
+        }, pool, lateResults::add);
+
+        assertNull(executor.check("file", key("A"), "A", null, 10, () -> false, () -> {
+        }));
+        assertNull(executor.check("file", key("A"), "A", null, 10, () -> false, () -> {
+        }));
+        release.countDown();
+        waitFor(() -> lateResults.size() == 1);
+
+        assertEquals(Collections.emptyList(), executor.check("file", key("A"), "A", null, 10, () -> false, () -> {
+        }));
+        assertEquals(1, calls.get());
+    }
+
+    public void testRetainCancelsChecksOfObsoleteBlocks() throws Exception {
+        SyntaxCheckExecutor executor = new SyntaxCheckExecutor(blocking(), pool, lateResults::add);
+
+        assertNull(executor.check("file", key("A"), "A", null, 10, () -> false, () -> {
+        }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        executor.retain("file", Collections.singleton(key("B")));
+
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        assertNull(executor.check("file", key("A"), "A", null, 10, () -> false, () -> {
+        }));
+        waitFor(() -> calls.get() == 2);
+    }
+
+    private BiFunction<String, VirtualFile, Collection<SourceAnnotation>> blocking() {
+        return (source, file) -> {
+            calls.incrementAndGet();
+            started.countDown();
+            try {
+                new CountDownLatch(1).await();
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+            return Collections.emptyList();
+        };
+    }
+
+    private static SourceAnnotationCache.BlockKey key(String source) {
+        return new SourceAnnotationCache.BlockKey(source, "", true, false, false);
+    }
+
+    static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue("timed out", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+}
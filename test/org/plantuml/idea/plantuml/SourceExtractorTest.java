@@ -90,4 +90,22 @@ public class SourceExtractorTest extends TestCase {
         assertEquals(expected, SourceExtractor.extractSource(source, source.length() / 2));
     }
 
+    public void testIncrementalUpdate() {
+        String text = validSource1 + intermediateText1 + validSource2 + intermediateText2 + validSource3;
+        DiagramBlockIndex index = new DiagramBlockIndex(text);
+
+        //remove @enduml of the second block - it runs into the third one
+        int offset = text.indexOf("@enduml", validSource1.length());
+        text = text.substring(0, offset) + text.substring(offset + "@enduml".length());
+        index.update(text, offset, "@enduml".length(), 0);
+        assertEquals(SourceExtractor.extractSources(text), index.getSources(text));
+        assertEquals(2, index.getSources(text).size());
+
+        //type into the first block
+        text = "@startuml some more" + text.substring("@startuml some".length());
+        index.update(text, "@startuml some".length(), 0, " more".length());
+        assertEquals(SourceExtractor.extractSources(text), index.getSources(text));
+        assertEquals("@startuml some more code @enduml", index.getSource(text, 3));
+    }
+
 }